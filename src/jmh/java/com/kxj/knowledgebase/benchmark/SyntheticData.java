@@ -0,0 +1,90 @@
+package com.kxj.knowledgebase.benchmark;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试用的合成数据（固定随机种子，离线可复现）
+ */
+public final class SyntheticData {
+
+    // nomic-embed-text 输出维度
+    public static final int DIMENSION = 768;
+
+    private static final String[] ZH_SENTENCES = {
+            "系统在接收到用户请求后首先进行身份校验。",
+            "向量检索的召回率取决于索引参数和数据分布！",
+            "父块提供完整上下文，子块用于精确匹配。",
+            "如果缓存命中则直接返回答案，否则调用大模型生成？",
+            "文档上传后会被解析、切分并写入向量库。",
+            "第三章介绍了部署流程与常见问题的排查方法。"
+    };
+
+    private static final String[] EN_SENTENCES = {
+            "The retriever merges vector and full-text results.",
+            "Each chunk keeps a reference to its parent section!",
+            "Embeddings are cached in Redis and in local memory.",
+            "Why does the index need to be rebuilt after restart?"
+    };
+
+    private SyntheticData() {
+        throw new UnsupportedOperationException("工具类不允许实例化");
+    }
+
+    /**
+     * 单位长度的随机向量
+     */
+    public static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    public static float[][] randomUnitVectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = randomUnitVector(random);
+        }
+        return vectors;
+    }
+
+    /**
+     * 在已有向量上加入少量噪声（模拟语义相近的问题）
+     */
+    public static float[] perturb(float[] vector, double noise, Random random) {
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] + random.nextGaussian() * noise);
+        }
+        return result;
+    }
+
+    /**
+     * 中英混合的合成语料，约 targetLength 个字符，每 8 句一个段落
+     */
+    public static String corpus(int targetLength, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(targetLength + 64);
+        int sentences = 0;
+        while (sb.length() < targetLength) {
+            if (random.nextInt(3) == 0) {
+                sb.append(EN_SENTENCES[random.nextInt(EN_SENTENCES.length)]).append(' ');
+            } else {
+                sb.append(ZH_SENTENCES[random.nextInt(ZH_SENTENCES.length)]);
+            }
+            if (++sentences % 8 == 0) {
+                sb.append("\n\n");
+            }
+        }
+        return sb.toString();
+    }
+}
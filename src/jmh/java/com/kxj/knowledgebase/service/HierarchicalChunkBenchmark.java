@@ -0,0 +1,49 @@
+package com.kxj.knowledgebase.service;
+
+import com.kxj.knowledgebase.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 子块切分（句子边界 + 重叠），输入为中英混合的合成父块文本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HierarchicalChunkBenchmark {
+
+    // 父块默认约 2000 字符，更大的输入用于观察随文本长度的增长
+    @Param({"2000", "20000"})
+    public int textLength;
+
+    private HierarchicalChunkService chunkService;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 切分不涉及向量化，无需注入依赖
+        chunkService = new HierarchicalChunkService(null, null);
+        text = SyntheticData.corpus(textLength, 42);
+    }
+
+    @Benchmark
+    public List<String> splitIntoChildChunks() {
+        return chunkService.splitIntoChildChunks(text, 300, 0.2);
+    }
+}
@@ -0,0 +1,89 @@
+package com.kxj.knowledgebase.service.cache;
+
+import com.kxj.knowledgebase.benchmark.SyntheticData;
+import com.kxj.knowledgebase.config.CacheProperties;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 语义缓存查找：HNSW 搜索 vs 暴力扫描（对应 {@link HnswVectorIndexService} 类注释中的性能对比）
+ * <p>
+ * 查询向量由已入库向量加噪声得到，模拟"相似问题"命中的场景。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HnswSearchBenchmark {
+
+    private static final int QUERY_COUNT = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    private HnswVectorIndexService hnswIndex;
+    private Map<String, float[]> vectors;
+    private float[][] queries;
+    private double threshold;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CacheProperties cacheProperties = new CacheProperties();
+        threshold = cacheProperties.getSimilarityThreshold();
+
+        float[][] stored = SyntheticData.randomUnitVectors(entries, 42);
+        vectors = new HashMap<>(entries * 2);
+        for (int i = 0; i < entries; i++) {
+            vectors.put("q" + i, stored[i]);
+        }
+
+        RagMetrics ragMetrics = new RagMetrics(new SimpleMeterRegistry());
+        hnswIndex = new HnswVectorIndexService(cacheProperties, null, null, ragMetrics);
+        hnswIndex.initInMemory();
+        // 索引构建不在测量范围内，并行插入缩短准备时间
+        IntStream.range(0, entries).parallel()
+                .forEach(i -> hnswIndex.add("q" + i, stored[i], "answer-" + i));
+
+        Random random = new Random(7);
+        queries = new float[QUERY_COUNT][];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = SyntheticData.perturb(stored[random.nextInt(entries)], 0.005, random);
+        }
+    }
+
+    private float[] nextQuery() {
+        cursor = (cursor + 1) % QUERY_COUNT;
+        return queries[cursor];
+    }
+
+    @Benchmark
+    public String hnswSearch() {
+        return hnswIndex.search(nextQuery(), 1, threshold);
+    }
+
+    @Benchmark
+    public SemanticCacheService.SimilarityRanking bruteForceScan() {
+        return SemanticCacheService.rankBySimilarity(nextQuery(), vectors, threshold);
+    }
+}
@@ -0,0 +1,53 @@
+package com.kxj.knowledgebase.service.cache;
+
+import com.kxj.knowledgebase.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语义缓存暴力扫描路径：候选集相似度计算与排序（不含 Redis 往返），候选向量为单位向量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SemanticCacheBenchmark {
+
+    @Param({"100", "1000"})
+    public int candidates;
+
+    private float[] query;
+    private Map<String, float[]> vectors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float[][] stored = SyntheticData.randomUnitVectors(candidates, 42);
+        vectors = new LinkedHashMap<>();
+        for (int i = 0; i < candidates; i++) {
+            vectors.put("q" + i, stored[i]);
+        }
+        query = SyntheticData.perturb(stored[0], 0.005, new Random(7));
+    }
+
+    @Benchmark
+    public SemanticCacheService.SimilarityRanking bruteForceScan() {
+        return SemanticCacheService.rankBySimilarity(query, vectors, 0.92);
+    }
+}
@@ -0,0 +1,99 @@
+package com.kxj.knowledgebase.service.retriever;
+
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.dto.SearchResult;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两个混合检索器的结果合并与重排序
+ * <p>
+ * 向量与全文结果各 topK 条，约一半 chunkId 重叠；mergeAndRank 会修改入参的分数，
+ * 因此每次调用前重新生成输入（Level.Invocation）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeAndRankBenchmark {
+
+    @Param({"10", "100"})
+    public int topK;
+
+    private HybridRetriever hybridRetriever;
+    private ParentAwareHybridRetriever parentAwareRetriever;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private List<SearchResult> vectorList;
+    private List<SearchResult> textList;
+    private Map<Long, SearchResult> vectorMap;
+    private Map<Long, SearchResult> textMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RetrievalProperties retrievalProperties = new RetrievalProperties();
+        hybridRetriever = new HybridRetriever(null, retrievalProperties, null, null, null);
+        parentAwareRetriever = new ParentAwareHybridRetriever(null, retrievalProperties, null, null, null, null, null, null, null);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareInputs() {
+        vectorList = results(0, "vector", false);
+        textList = results(topK / 2, "fulltext", true);
+        vectorMap = toMap(results(0, "vector", false));
+        textMap = toMap(results(topK / 2, "fulltext", true));
+    }
+
+    private List<SearchResult> results(int firstId, String source, boolean withRank) {
+        List<SearchResult> results = new ArrayList<>(topK);
+        for (int i = 0; i < topK; i++) {
+            DocumentChunk chunk = DocumentChunk.builder()
+                    .id((long) (firstId + i))
+                    .documentId(1L)
+                    .parentChunkId((long) ((firstId + i) / 4))
+                    .chunkIndex(firstId + i)
+                    .chunkLevel(1)
+                    .build();
+            results.add(withRank
+                    ? new SearchResult(chunk, 1.0, source, (float) random.nextDouble())
+                    : new SearchResult(chunk, random.nextDouble(), source));
+        }
+        return results;
+    }
+
+    private static Map<Long, SearchResult> toMap(List<SearchResult> results) {
+        Map<Long, SearchResult> map = new LinkedHashMap<>();
+        results.forEach(r -> map.put(r.getChunk().getId(), r));
+        return map;
+    }
+
+    @Benchmark
+    public List<SearchResult> hybridRetriever() {
+        return hybridRetriever.mergeAndRank(vectorList, textList, topK);
+    }
+
+    @Benchmark
+    public List<SearchResult> parentAwareHybridRetriever() {
+        return parentAwareRetriever.mergeAndRank(vectorMap, textMap, topK);
+    }
+}
@@ -0,0 +1,85 @@
+package com.kxj.knowledgebase.util;
+
+import com.kxj.knowledgebase.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量序列化：Redis 二进制编解码（{@link VectorCodec}）与 pgvector 文本格式（{@link StringUtils#floatArrayToString}）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorFormatBenchmark {
+
+    private float[] vector;
+    private byte[] legacyText;
+    private String pgvectorText;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vector = SyntheticData.randomUnitVector(new Random(42));
+        pgvectorText = StringUtils.floatArrayToString(vector);
+        // 旧版 Redis 文本格式（逗号分隔，无括号）
+        legacyText = pgvectorText.substring(1, pgvectorText.length() - 1).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 二进制编码参数（只作用于 encode / decode，文本格式不随编码类型变化）
+     */
+    @State(Scope.Benchmark)
+    public static class BinaryState {
+
+        @Param({"FLOAT32", "FLOAT16", "INT8"})
+        public VectorCodec.Encoding encoding;
+
+        private byte[] encoded;
+
+        @Setup(Level.Trial)
+        public void setUp(VectorFormatBenchmark benchmark) {
+            encoded = VectorCodec.encode(benchmark.vector, encoding);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(BinaryState state) {
+        return VectorCodec.encode(vector, state.encoding);
+    }
+
+    @Benchmark
+    public float[] decode(BinaryState state) {
+        return VectorCodec.decode(state.encoded);
+    }
+
+    @Benchmark
+    public float[] decodeLegacyText() {
+        return VectorCodec.decode(legacyText);
+    }
+
+    @Benchmark
+    public String floatArrayToString() {
+        return StringUtils.floatArrayToString(vector);
+    }
+
+    @Benchmark
+    public float[] decodePgvectorText() {
+        return VectorCodec.decodeText(pgvectorText);
+    }
+}
@@ -0,0 +1,54 @@
+package com.kxj.knowledgebase.util;
+
+import com.kxj.knowledgebase.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 768 维相似度内核：SIMD 点积 vs 标量点积 vs 未归一化的完整余弦
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorMathBenchmark {
+
+    private float[] a;
+    private float[] b;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        a = SyntheticData.randomUnitVector(random);
+        b = SyntheticData.randomUnitVector(random);
+    }
+
+    @Benchmark
+    public float simdDot() {
+        return SimdVectorMath.dot(a, b);
+    }
+
+    @Benchmark
+    public float scalarDot() {
+        return VectorMath.scalarDot(a, b);
+    }
+
+    @Benchmark
+    public double cosine() {
+        return VectorMath.cosine(a, b);
+    }
+}
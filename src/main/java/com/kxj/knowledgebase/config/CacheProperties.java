@@ -1,5 +1,6 @@
 package com.kxj.knowledgebase.config;
 
+import com.kxj.knowledgebase.util.VectorCodec;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -41,6 +42,11 @@ public class CacheProperties {
      */
     private Duration embeddingTtl = Duration.ofDays(7);
 
+    /**
+     * Embedding 缓存未命中时是否回退读取升级前的旧 key（旧 key 一个 embeddingTtl 后全部过期，之后可关闭）
+     */
+    private boolean embeddingLegacyKeyFallback = true;
+
     /**
      * 是否启用语义缓存
      */
@@ -50,4 +56,29 @@ public class CacheProperties {
      * 每次扫描的候选缓存数量上限
      */
     private int maxCandidateScan = 100;
+
+    /**
+     * Redis 中向量的编码方式：FLOAT32 / FLOAT16 / INT8
+     */
+    private VectorCodec.Encoding vectorEncoding = VectorCodec.Encoding.FLOAT32;
+
+    /**
+     * 上传新文档时，问题与新子块相似度超过此值的缓存答案将失效
+     */
+    private double uploadInvalidationThreshold = 0.75;
+
+    /**
+     * 是否启用 HNSW 索引本地快照（重启后热启动）
+     */
+    private boolean hnswSnapshotEnabled = true;
+
+    /**
+     * HNSW 快照目录
+     */
+    private String hnswSnapshotDir = "./data/hnsw";
+
+    /**
+     * HNSW 快照间隔（无变更时跳过）
+     */
+    private Duration hnswSnapshotInterval = Duration.ofMinutes(5);
 }
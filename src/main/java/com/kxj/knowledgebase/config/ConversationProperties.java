@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "conversation")
@@ -16,4 +18,9 @@ public class ConversationProperties {
     private boolean enableAutoTitle = true;
 
     private int titleMaxLength = 50;
+
+    /**
+     * 流式对话（SSE）连接超时时间
+     */
+    private Duration streamTimeout = Duration.ofMinutes(5);
 }
@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "document.processing")
@@ -15,4 +17,12 @@ public class DocumentProcessingProperties {
     private int maxConcurrentChunks = 20;
     /** 块间重叠比例 (0.0-1.0)，默认0.2表示20%重叠 */
     private double overlapRatio = 0.2;
+    /** 向量化微批大小（单次 embedAll 的文本条数） */
+    private int embeddingBatchSize = 32;
+    /** 同时在途的向量化批次数上限（对话与入库共享的 Ollama 并发预算） */
+    private int maxConcurrentEmbeddingBatches = 4;
+    /** 向量化调度器凑批的最长等待时间 */
+    private Duration embeddingMaxWait = Duration.ofMillis(5);
+    /** 上传文件的本地暂存目录（解析完成后删除），默认系统临时目录 */
+    private String spoolDir = System.getProperty("java.io.tmpdir");
 }
@@ -1,9 +1,14 @@
 package com.kxj.knowledgebase.config;
 
+import com.kxj.knowledgebase.service.retriever.RetrievalMode;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "retrieval.search")
@@ -12,4 +17,88 @@ public class RetrievalProperties {
     private double vectorWeight = 0.6;
     private double textWeight = 0.4;
 
+    /**
+     * 是否启用子块向量的进程内 HNSW 索引（替代 pgvector 向量检索）
+     */
+    private boolean inMemoryIndexEnabled = false;
+
+    /**
+     * 是否启用子块文本的进程内 BM25 词法索引（替代 PostgreSQL 全文检索，支持中文二元组切分）
+     */
+    private boolean lexicalIndexEnabled = false;
+
+    /**
+     * 是否使用数据库函数 parent_aware_hybrid_search 一次完成父文档混合检索
+     * 任一进程内索引（向量/词法）就绪时仍走向量检索 + 全文检索两路并发
+     */
+    private boolean serverSideHybridEnabled = true;
+
+    /**
+     * 进程内索引最大条目数
+     */
+    private int inMemoryIndexMaxElements = 1_000_000;
+
+    /**
+     * 父块本地缓存最大条目数
+     */
+    private int parentCacheMaxSize = 10000;
+
+    /**
+     * 父块本地缓存访问过期时间
+     */
+    private Duration parentCacheExpireAfterAccess = Duration.ofHours(1);
+
+    /**
+     * 混合检索中向量检索的超时时间
+     */
+    private Duration vectorTimeout = Duration.ofSeconds(3);
+
+    /**
+     * 混合检索中全文检索的超时时间
+     */
+    private Duration fulltextTimeout = Duration.ofSeconds(3);
+
+    /**
+     * 请求未指定时使用的检索模式
+     */
+    private RetrievalMode mode = RetrievalMode.BALANCED;
+
+    /**
+     * 各检索模式的 pgvector 查询参数
+     */
+    private SearchProfile latency = new SearchProfile(40, null, 0);
+    private SearchProfile balanced = new SearchProfile(100, "relaxed_order", 20000);
+    private SearchProfile recall = new SearchProfile(400, "relaxed_order", 100000);
+
+    public SearchProfile profile(RetrievalMode mode) {
+        return switch (mode) {
+            case LATENCY -> latency;
+            case BALANCED -> balanced;
+            case RECALL -> recall;
+        };
+    }
+
+    /**
+     * pgvector HNSW 查询参数（事务级生效）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SearchProfile {
+        /**
+         * hnsw.ef_search：候选列表大小，越大召回越高、越慢
+         */
+        private int efSearch;
+
+        /**
+         * hnsw.iterative_scan（pgvector 0.8+）：off / relaxed_order / strict_order，为空表示不设置
+         * 带过滤条件的查询在索引候选不足时继续扫描，避免返回少于 LIMIT 条结果
+         */
+        private String iterativeScan;
+
+        /**
+         * hnsw.max_scan_tuples（pgvector 0.8+）：迭代扫描最多访问的元组数，0 表示使用默认值
+         */
+        private int maxScanTuples;
+    }
 }
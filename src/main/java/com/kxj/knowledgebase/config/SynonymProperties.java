@@ -7,8 +7,13 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 同义词配置属性
@@ -36,12 +41,30 @@ public class SynonymProperties {
      */
     private String mappingsStr;
 
+    /**
+     * 自定义停用词（全文检索查询中移除，与默认停用词合并）
+     */
+    private List<String> stopWords = new ArrayList<>();
+
+    /**
+     * 从字符串解析自定义停用词（用于环境变量配置）
+     * 格式："词1,词2"
+     */
+    private String stopWordsStr;
+
     @PostConstruct
     public void init() {
         // 如果配置了字符串格式的映射，解析并合并到 mappings
         if (StringUtils.hasText(mappingsStr)) {
             parseMappingsStr();
         }
+        if (StringUtils.hasText(stopWordsStr)) {
+            Arrays.stream(stopWordsStr.split(","))
+                    .map(String::trim)
+                    .filter(StringUtils::hasText)
+                    .forEach(stopWords::add);
+            log.info("[同义词配置] 从环境变量解析了 {} 个自定义停用词", stopWords.size());
+        }
     }
 
     private void parseMappingsStr() {
@@ -135,6 +158,47 @@ public class SynonymProperties {
         );
     }
 
+    /**
+     * 中文语气词（缓存Key与全文检索查询中均移除）
+     */
+    public List<String> getParticles() {
+        return List.of("的", "了", "吗", "呢", "吧", "啊", "呀", "哇", "哦", "哈", "咧", "呗");
+    }
+
+    /**
+     * 默认停用词（原 remove_stopwords 函数中的疑问词、代词、指示词、虚词、介词连词、关联词）
+     */
+    public List<String> getDefaultStopWords() {
+        return List.of(
+                // ===== 疑问词、语气词 =====
+                "什么", "怎么", "为什么", "多少", "几", "谁", "哪", "哪个", "哪些", "哪里", "哪儿", "什么时候",
+                "怎样", "如何", "嗯", "罢了", "而已", "罢", "么", "嘛",
+                // ===== 代词 =====
+                "我", "你", "他", "她", "它", "我们", "你们", "他们", "她们", "它们", "自己", "人家",
+                // ===== 指示词 =====
+                "这", "那", "这些", "那些", "这个", "那个", "这里", "那里", "这边", "那边",
+                // ===== 常见虚词 =====
+                "在", "是", "有", "和", "就", "不", "人", "都", "也", "很", "到", "说", "要", "去", "会", "着",
+                "没有", "看", "好", "一", "一个", "上",
+                // ===== 介词连词 =====
+                "把", "被", "给", "让", "叫", "使", "对于", "关于", "由于", "由", "从", "自", "自从", "打", "往",
+                "向", "朝", "沿着", "顺着", "随着", "跟", "同", "与", "为了", "为着", "除了", "除开", "除去", "除",
+                // ===== 关联词 =====
+                "或者", "还是", "既", "既然", "所以", "因此", "因而", "于是", "从而", "虽然", "尽管", "即使", "哪怕",
+                "就算", "不论", "不管", "无论", "只要", "只有", "除非", "假如", "如果", "要是", "譬如", "例如", "比如",
+                "便", "才", "又", "再", "却", "并且", "况且", "何况", "再说", "再者", "否则", "不然", "要不", "要不然", "要么"
+        );
+    }
+
+    /**
+     * 获取有效的停用词（默认值 + 自定义）
+     */
+    public Set<String> getEffectiveStopWords() {
+        Set<String> effective = new LinkedHashSet<>(getDefaultStopWords());
+        effective.addAll(stopWords);
+        return effective;
+    }
+
     /**
      * 获取有效的同义词映射（配置文件 + 默认值合并）
      */
@@ -11,7 +11,4 @@ public class CacheConstants {
     public static final String DOCUMENT_UPLOAD_PROGRESS_PREFIX = "document:upload:progress:";
     public static final long DOCUMENT_UPLOAD_PROGRESS_TTL = 3600;
 
-    public static final String BATCH_UPLOAD_TASK_PREFIX = "document:batch:task:";
-    public static final long BATCH_UPLOAD_TASK_TTL = 7200;
-
 }
\ No newline at end of file
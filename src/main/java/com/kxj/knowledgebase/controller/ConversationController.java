@@ -1,14 +1,19 @@
 package com.kxj.knowledgebase.controller;
 
+import com.kxj.knowledgebase.config.ConversationProperties;
 import com.kxj.knowledgebase.dto.ApiResponse;
 import com.kxj.knowledgebase.entity.Conversation;
 import com.kxj.knowledgebase.entity.Message;
 import com.kxj.knowledgebase.service.ConversationService;
+import com.kxj.knowledgebase.service.retriever.RetrievalMode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -19,6 +24,7 @@ import java.util.List;
 public class ConversationController {
 
     private final ConversationService conversationService;
+    private final ConversationProperties conversationProperties;
 
     @PostMapping("/chat")
     public ApiResponse<ChatResponse> chat(@RequestBody ChatRequest request) {
@@ -30,7 +36,7 @@ public class ConversationController {
             log.info("[sessionId为空，生成新的sessionId: {}]", sessionId);
         }
 
-        String answer = conversationService.chat(sessionId, request.getQuestion());
+        String answer = conversationService.chat(sessionId, request.getQuestion(), request.getMode());
 
         return ApiResponse.success(ChatResponse.builder()
                 .answer(answer)
@@ -38,6 +44,65 @@ public class ConversationController {
                 .build());
     }
 
+    /**
+     * 流式聊天（SSE）
+     * 事件：token（增量文本）、done（完整回答与 sessionId）、error
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        log.info("[收到流式聊天请求，sessionId: {}]", request.getSessionId());
+
+        String sessionId = request.getSessionId();
+        if (sessionId == null || sessionId.trim().isEmpty()) {
+            sessionId = java.util.UUID.randomUUID().toString();
+            log.info("[sessionId为空，生成新的sessionId: {}]", sessionId);
+        }
+        String finalSessionId = sessionId;
+
+        SseEmitter emitter = new SseEmitter(conversationProperties.getStreamTimeout().toMillis());
+        conversationService.chatStream(sessionId, request.getQuestion(), request.getMode(), new ConversationService.ChatStreamListener() {
+            // 客户端断开后不再推送，但生成仍会完成并持久化
+            private volatile boolean disconnected = false;
+
+            @Override
+            public void onToken(String token) {
+                send(SseEmitter.event().name("token").data(token));
+            }
+
+            @Override
+            public void onComplete(String answer) {
+                send(SseEmitter.event().name("done").data(ChatResponse.builder()
+                        .answer(answer)
+                        .sessionId(finalSessionId)
+                        .build(), MediaType.APPLICATION_JSON));
+                if (!disconnected) {
+                    emitter.complete();
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                send(SseEmitter.event().name("error").data("生成回答失败: " + error.getMessage()));
+                if (!disconnected) {
+                    emitter.complete();
+                }
+            }
+
+            private void send(SseEmitter.SseEventBuilder event) {
+                if (disconnected) {
+                    return;
+                }
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    disconnected = true;
+                    log.info("[流式聊天客户端已断开，sessionId: {}]", finalSessionId);
+                }
+            }
+        });
+        return emitter;
+    }
+
     @GetMapping("/{sessionId}")
     public ApiResponse<Conversation> getConversation(@PathVariable String sessionId) {
         log.info("[获取对话，sessionId: {}]", sessionId);
@@ -77,6 +142,10 @@ public class ConversationController {
     public static class ChatRequest {
         private String sessionId;
         private String question;
+        /**
+         * 检索模式（LATENCY / BALANCED / RECALL），为空时使用配置的默认模式
+         */
+        private RetrievalMode mode;
     }
 
     @lombok.Data
@@ -128,10 +128,16 @@ public class DocumentController {
                 .body(body);
     }
 
+    /**
+     * 批量上传文档
+     *
+     * @param replace 为 true 时按文件名替换已有文档（作为新版本增量更新），默认每个文件都创建新文档
+     */
     @PostMapping("/batch-upload")
-    public ApiResponse<String> batchUploadDocuments(@RequestParam("files") MultipartFile[] files) {
+    public ApiResponse<String> batchUploadDocuments(@RequestParam("files") MultipartFile[] files,
+                                                    @RequestParam(defaultValue = "false") boolean replace) {
         try {
-            log.info("[收到批量文档上传请求, 文档数量: {}]", files.length);
+            log.info("[收到批量文档上传请求, 文档数量: {}, 替换同名文档: {}]", files.length, replace);
             
             if (files.length == 0)
                 return ApiResponse.error("请选择要上传的文件");
@@ -139,7 +145,7 @@ public class DocumentController {
             if (files.length > 100)
                 return ApiResponse.error("单次最多支持上传100个文件");
 
-            return ApiResponse.success(documentService.processDocumentsBatch(List.of(files)));
+            return ApiResponse.success(documentService.processDocumentsBatch(List.of(files), replace));
         } catch (Exception e) {
             log.error("[批量上传异常]", e);
             return ApiResponse.error("批量上传失败: " + e.getMessage());
@@ -0,0 +1,76 @@
+package com.kxj.knowledgebase.controller;
+
+import com.kxj.knowledgebase.config.SynonymProperties;
+import com.kxj.knowledgebase.dto.ApiResponse;
+import com.kxj.knowledgebase.service.cache.SynonymNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 同义词/停用词词典管理（热更新，无需重启）
+ * <p>
+ * PUT 的修改只保存在内存中，不写回配置，重启或调用 /reload 后恢复为配置中的词典。
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/synonyms")
+@RequiredArgsConstructor
+public class SynonymController {
+
+    private final SynonymNormalizer synonymNormalizer;
+    private final SynonymProperties synonymProperties;
+
+    @GetMapping
+    public ApiResponse<DictionaryResponse> getDictionary() {
+        return ApiResponse.success(DictionaryResponse.builder()
+                .enabled(synonymProperties.isEnabled())
+                .mappings(synonymProperties.getMappings())
+                .stopWords(synonymProperties.getStopWords())
+                .build());
+    }
+
+    /**
+     * 替换自定义同义词与停用词并重建自动机
+     * <p>
+     * 传入的字段整体替换当前自定义内容（不与之前的 PUT 或配置合并，仍与内置默认词典合并），未传的字段保持不变。
+     */
+    @PutMapping
+    public ApiResponse<Integer> updateDictionary(@RequestBody DictionaryRequest request) {
+        log.info("[收到词典更新请求] 同义词={}, 停用词={}",
+                request.getMappings() != null ? request.getMappings().size() : "不变",
+                request.getStopWords() != null ? request.getStopWords().size() : "不变");
+        int patterns = synonymNormalizer.update(request.getMappings(), request.getStopWords());
+        return ApiResponse.success("词典已更新", patterns);
+    }
+
+    /**
+     * 重新读取配置（配置文件/环境变量）并重建自动机，丢弃 PUT 在内存中的修改
+     */
+    @PostMapping("/reload")
+    public ApiResponse<Integer> reload() {
+        log.info("[收到词典重载请求]");
+        return ApiResponse.success("词典已重载", synonymNormalizer.reload());
+    }
+
+    @lombok.Data
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    public static class DictionaryRequest {
+        private Map<String, String> mappings;
+        private List<String> stopWords;
+    }
+
+    @lombok.Data
+    @lombok.Builder
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    public static class DictionaryResponse {
+        private boolean enabled;
+        private Map<String, String> mappings;
+        private List<String> stopWords;
+    }
+}
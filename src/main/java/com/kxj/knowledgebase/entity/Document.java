@@ -49,6 +49,9 @@ public class Document {
     @Column(nullable = false)
     private Boolean processed;
 
+    @Column(nullable = false)
+    private Integer version;          // 同名文档每次重新入库 +1
+
     @Column(length = 500)
     private String errorMessage;
 }
\ No newline at end of file
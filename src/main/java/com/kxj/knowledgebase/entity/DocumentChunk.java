@@ -36,9 +36,9 @@ public class DocumentChunk {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
-    @Column(nullable = false, columnDefinition = "vector(768)")
+    @Column(columnDefinition = "vector(768)")
     @Type(VectorType.class)
-    private String embedding;
+    private String embedding;         // 父块为 null（不参与向量检索）
 
     @Column(nullable = false)
     private LocalDateTime createTime;
@@ -88,4 +88,9 @@ public class DocumentChunk {
 
     @Column(name = "sub_chunk_count")
     private Integer subChunkCount;    // 父块：包含多少子块
+
+    // ========== 增量入库字段 ==========
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;       // 内容 SHA-256，重新入库时识别未变化的 chunk
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.kxj.knowledgebase.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文档入库任务（一次批量上传）
+ */
+@Entity
+@Table(name = "ingestion_job")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJob {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    @Column(nullable = false)
+    private Integer totalDocuments;
+
+    @Column(nullable = false)
+    private LocalDateTime createTime;
+
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+
+    public enum Status {
+        RUNNING, COMPLETED
+    }
+}
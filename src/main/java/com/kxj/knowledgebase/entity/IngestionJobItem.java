@@ -0,0 +1,87 @@
+package com.kxj.knowledgebase.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * 入库任务中的单个文档及其检查点
+ */
+@Entity
+@Table(name = "ingestion_job_item")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 36)
+    private String jobId;
+
+    @Column(nullable = false, length = 255)
+    private String fileName;
+
+    @Column(nullable = false, length = 1000)
+    private String fileHash;
+
+    @Column(nullable = false)
+    private Long fileSize;
+
+    @Column(length = 255)
+    private String contentType;
+
+    /** 本地暂存文件路径（上传 MinIO 前进程退出时用于恢复） */
+    @Column(length = 1000)
+    private String spoolPath;
+
+    @Column(length = 500)
+    private String objectName;
+
+    private Long documentId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    /** 预分配的 chunk 主键（按切分顺序） */
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(columnDefinition = "bigint[]")
+    private Long[] chunkIds;
+
+    @Column(nullable = false)
+    private Integer totalBatches;
+
+    @Column(nullable = false)
+    private Integer persistedBatches;
+
+    @Column(length = 1000)
+    private String errorMessage;
+
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+
+    public enum Status {
+        /** 已暂存到本地，尚未上传 MinIO */
+        PENDING,
+        /** 已上传 MinIO 并创建文档记录 */
+        UPLOADED,
+        /** 已切分并分配 chunk 主键，按批次写入中 */
+        CHUNKED,
+        COMPLETED,
+        FAILED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.kxj.knowledgebase.repository;
+
+/**
+ * 子块内容投影（只读取 ID 与文本，用于加载内存词法索引）
+ */
+public interface ChunkContentView {
+    Long getId();
+    Long getDocumentId();
+    String getContent();
+}
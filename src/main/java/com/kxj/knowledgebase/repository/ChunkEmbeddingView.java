@@ -0,0 +1,10 @@
+package com.kxj.knowledgebase.repository;
+
+/**
+ * 子块向量投影（只读取 ID 与向量，用于加载内存索引）
+ */
+public interface ChunkEmbeddingView {
+    Long getId();
+    Long getDocumentId();
+    String getEmbedding();
+}
@@ -0,0 +1,33 @@
+package com.kxj.knowledgebase.repository;
+
+import com.kxj.knowledgebase.entity.DocumentChunk;
+
+/**
+ * 检索命中投影（只读取检索路径需要的列，不含向量、元数据等大字段）
+ * 向量检索时 distance 为余弦距离；词法索引回表时为 NULL
+ */
+public interface ChunkHitView {
+    Long getId();
+    Long getParentChunkId();
+    Long getDocumentId();
+    Integer getChunkIndex();
+    String getContent();
+    Double getDistance();
+
+    /**
+     * 余弦相似度（1 - 余弦距离）
+     */
+    default double getScore() {
+        return getDistance() != null ? 1.0 - getDistance() : 0.0;
+    }
+
+    default DocumentChunk toDocumentChunk() {
+        DocumentChunk chunk = new DocumentChunk();
+        chunk.setId(getId());
+        chunk.setParentChunkId(getParentChunkId());
+        chunk.setDocumentId(getDocumentId());
+        chunk.setChunkIndex(getChunkIndex());
+        chunk.setContent(getContent());
+        return chunk;
+    }
+}
@@ -13,12 +13,20 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
 
     void deleteByDocumentId(Long documentId);
 
-    @Query(value = "SELECT * FROM document_chunk ORDER BY embedding <=> CAST(:embedding AS vector) LIMIT :limit", nativeQuery = true)
-    List<DocumentChunk> findNearestNeighbors(@Param("embedding") String embedding, @Param("limit") int limit);
-
     @Query(value = "SELECT * FROM fulltext_search_chunks(:query, :limit)", nativeQuery = true)
     List<FullTextSearchResult> fullTextSearch(@Param("query") String query, @Param("limit") int limit);
 
+    /**
+     * 服务端父文档混合检索：子块 kNN + 全文检索 + 融合 + 父块关联，一次往返
+     */
+    @Query(value = "SELECT parent_chunk_id AS parentChunkId, document_id AS documentId, parent_content AS parentContent, section_title AS sectionTitle, page_range AS pageRange, headings_path AS headingsPath, parent_score AS parentScore, child_chunk_id AS childChunkId, child_chunk_index AS childChunkIndex, child_content AS childContent, child_score AS childScore, match_type AS matchType FROM parent_aware_hybrid_search(:query, CAST(:embedding AS vector), :childLimit, :parentLimit, :textWeight, :vectorWeight)", nativeQuery = true)
+    List<ParentHybridHitView> parentAwareHybridSearch(@Param("query") String query,
+                                                     @Param("embedding") String embedding,
+                                                     @Param("childLimit") int childLimit,
+                                                     @Param("parentLimit") int parentLimit,
+                                                     @Param("textWeight") double textWeight,
+                                                     @Param("vectorWeight") double vectorWeight);
+
     // ========== 父文档检索支持 ==========
 
     /**
@@ -37,16 +45,48 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
      */
     List<DocumentChunk> findByDocumentIdAndChunkLevel(Long documentId, Integer chunkLevel);
 
+    // 向量检索语句都带 chunk_level = 1 条件，才能命中子块部分 HNSW 索引（V13）
+
     /**
      * 向量检索：只检索子块（chunkLevel = 1）
      */
     @Query(value = "SELECT * FROM document_chunk WHERE chunk_level = 1 ORDER BY embedding <=> CAST(:embedding AS vector) LIMIT :limit", nativeQuery = true)
     List<DocumentChunk> findNearestChildChunks(@Param("embedding") String embedding, @Param("limit") int limit);
 
+    /**
+     * 子块向量检索（投影）：只返回 id、父块ID、文档ID、序号、内容与余弦距离
+     */
+    @Query(value = "SELECT id, parent_chunk_id AS parentChunkId, document_id AS documentId, chunk_index AS chunkIndex, content, embedding <=> CAST(:embedding AS vector) AS distance FROM document_chunk WHERE chunk_level = 1 ORDER BY embedding <=> CAST(:embedding AS vector) LIMIT :limit", nativeQuery = true)
+    List<ChunkHitView> findNearestChildHits(@Param("embedding") String embedding, @Param("limit") int limit);
+
+    /**
+     * 按ID读取子块命中投影（内存索引检索后回表），距离在库内计算
+     */
+    @Query(value = "SELECT id, parent_chunk_id AS parentChunkId, document_id AS documentId, chunk_index AS chunkIndex, content, embedding <=> CAST(:embedding AS vector) AS distance FROM document_chunk WHERE id IN (:ids)", nativeQuery = true)
+    List<ChunkHitView> findHitsByIds(@Param("embedding") String embedding, @Param("ids") List<Long> ids);
+
     /**
      * 指定文档内的向量检索（子块）
      */
     @Query(value = "SELECT * FROM document_chunk WHERE chunk_level = 1 AND document_id = :docId ORDER BY embedding <=> CAST(:embedding AS vector) LIMIT :limit", nativeQuery = true)
     List<DocumentChunk> findNearestChildChunksByDocument(@Param("embedding") String embedding, @Param("docId") Long documentId, @Param("limit") int limit);
 
+    /**
+     * 按ID游标分页读取子块向量（用于加载内存 HNSW 索引）
+     */
+    @Query(value = "SELECT id, document_id AS documentId, CAST(embedding AS text) AS embedding FROM document_chunk WHERE chunk_level = 1 AND id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<ChunkEmbeddingView> findChildEmbeddingsAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 按ID游标分页读取子块内容（用于加载内存 BM25 词法索引）
+     */
+    @Query(value = "SELECT id, document_id AS documentId, content FROM document_chunk WHERE chunk_level = 1 AND id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<ChunkContentView> findChildContentsAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 按ID读取子块命中投影（内存词法索引检索后回表），不计算距离（distance 为 NULL）
+     */
+    @Query(value = "SELECT id, parent_chunk_id AS parentChunkId, document_id AS documentId, chunk_index AS chunkIndex, content, CAST(NULL AS double precision) AS distance FROM document_chunk WHERE id IN (:ids)", nativeQuery = true)
+    List<ChunkHitView> findTextHitsByIds(@Param("ids") List<Long> ids);
+
 }
\ No newline at end of file
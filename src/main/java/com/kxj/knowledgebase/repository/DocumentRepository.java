@@ -12,4 +12,6 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
 
     List<Document> findByFileHashIn(List<String> fileHashes);
 
+    List<Document> findByFileNameIn(List<String> fileNames);
+
 }
\ No newline at end of file
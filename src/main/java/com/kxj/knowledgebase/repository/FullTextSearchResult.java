@@ -4,6 +4,7 @@ import com.kxj.knowledgebase.entity.DocumentChunk;
 
 public interface FullTextSearchResult {
     Long getChunk_id();
+    Long getParent_chunk_id();
     Long getDocument_id();
     Integer getChunk_index();
     String getContent();
@@ -12,6 +13,7 @@ public interface FullTextSearchResult {
     default DocumentChunk toDocumentChunk() {
         DocumentChunk chunk = new DocumentChunk();
         chunk.setId(getChunk_id());
+        chunk.setParentChunkId(getParent_chunk_id());
         chunk.setDocumentId(getDocument_id());
         chunk.setChunkIndex(getChunk_index());
         chunk.setContent(getContent());
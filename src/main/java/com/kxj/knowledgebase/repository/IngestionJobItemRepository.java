@@ -0,0 +1,31 @@
+package com.kxj.knowledgebase.repository;
+
+import com.kxj.knowledgebase.entity.IngestionJobItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IngestionJobItemRepository extends JpaRepository<IngestionJobItem, Long> {
+
+    List<IngestionJobItem> findByJobId(String jobId);
+
+    List<IngestionJobItem> findByStatusInOrderById(Collection<IngestionJobItem.Status> statuses);
+
+    long countByJobIdAndStatusIn(String jobId, Collection<IngestionJobItem.Status> statuses);
+
+    /**
+     * 记录已提交的 chunk 批次数（与批次写入在同一事务中执行）
+     */
+    @Modifying
+    @Query("UPDATE IngestionJobItem i SET i.persistedBatches = :persistedBatches, i.updateTime = :updateTime WHERE i.id = :id")
+    int updatePersistedBatches(@Param("id") Long id,
+                               @Param("persistedBatches") int persistedBatches,
+                               @Param("updateTime") LocalDateTime updateTime);
+}
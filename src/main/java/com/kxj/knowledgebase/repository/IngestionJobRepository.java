@@ -0,0 +1,9 @@
+package com.kxj.knowledgebase.repository;
+
+import com.kxj.knowledgebase.entity.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, String> {
+}
@@ -0,0 +1,20 @@
+package com.kxj.knowledgebase.repository;
+
+/**
+ * 服务端父文档混合检索结果行（parent_aware_hybrid_search）
+ * 每行一个命中子块，附带其父块内容；同一父块的行相邻，按父块分数、子块分数降序
+ */
+public interface ParentHybridHitView {
+    Long getParentChunkId();
+    Long getDocumentId();
+    String getParentContent();
+    String getSectionTitle();
+    String getPageRange();
+    String getHeadingsPath();
+    Double getParentScore();
+    Long getChildChunkId();
+    Integer getChildChunkIndex();
+    String getChildContent();
+    Double getChildScore();
+    String getMatchType();
+}
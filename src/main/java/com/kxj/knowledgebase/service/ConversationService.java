@@ -13,6 +13,10 @@ import com.kxj.knowledgebase.service.embedding.CachedEmbeddingService;
 import com.kxj.knowledgebase.service.rag.RAGService;
 import com.kxj.knowledgebase.service.retriever.HybridRetriever;
 import com.kxj.knowledgebase.service.retriever.ParentAwareHybridRetriever;
+import com.kxj.knowledgebase.service.retriever.RetrievalMode;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -22,6 +26,9 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -39,6 +46,7 @@ public class ConversationService {
     private final SemanticCacheService semanticCacheService;
     private final RedisTemplate<String, String> redisTemplate;
     private final ConversationProperties conversationProperties;
+    private final ExecutorService optimizedExecutorService;
 
     public Conversation createConversation(String sessionId) {
         log.info("[创建新对话，sessionId: {}]", sessionId);
@@ -104,8 +112,92 @@ public class ConversationService {
         return messageRepository.findByConversationIdOrderByCreateTimeAsc(conversationId);
     }
 
-    @Transactional
-    public String chat(String sessionId, String question) {
+    /**
+     * 同步对话
+     * <p>
+     * 不开启外层事务：检索与大模型调用耗时较长，外层事务会全程占用一个连接，
+     * 检索还会在独立事务中再取连接，并发对话时容易耗尽连接池。消息持久化由各仓库调用各自提交。
+     */
+    public String chat(String sessionId, String question, RetrievalMode mode) {
+        ChatPreparation preparation = prepareChat(sessionId, question, mode);
+        if (preparation.immediateAnswer() != null) {
+            return preparation.immediateAnswer();
+        }
+
+        // 无历史上下文时答案只取决于问题，相同问题的并发请求只生成一次
+        String answer = preparation.history().isEmpty()
+                ? semanticCacheService.generateOnce(question,
+                        () -> ragService.answerWithContext(question, preparation.context(), preparation.history()))
+                : ragService.answerWithContext(question, preparation.context(), preparation.history());
+
+        completeChat(preparation, answer);
+        return answer;
+    }
+
+    /**
+     * 流式对话：检索在虚拟线程上完成后，逐 token 回调；生成结束后持久化消息并写入语义缓存
+     *
+     * @param sessionId 会话ID
+     * @param question  用户问题
+     * @param mode      检索模式，为 null 时使用配置的默认模式
+     * @param listener  流式回调
+     */
+    public void chatStream(String sessionId, String question, RetrievalMode mode, ChatStreamListener listener) {
+        optimizedExecutorService.execute(() -> {
+            ChatPreparation preparation;
+            try {
+                preparation = prepareChat(sessionId, question, mode);
+            } catch (Exception e) {
+                log.error("[流式对话准备失败，sessionId: {}]", sessionId, e);
+                listener.onError(e);
+                return;
+            }
+
+            if (preparation.immediateAnswer() != null) {
+                listener.onToken(preparation.immediateAnswer());
+                listener.onComplete(preparation.immediateAnswer());
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            ragService.streamAnswerWithContext(question, preparation.context(), preparation.history(),
+                    new StreamingResponseHandler<>() {
+                        private boolean firstToken = true;
+
+                        @Override
+                        public void onNext(String token) {
+                            if (firstToken) {
+                                firstToken = false;
+                                log.info("[流式对话首 token 耗时 {}ms]", System.currentTimeMillis() - startTime);
+                            }
+                            listener.onToken(token);
+                        }
+
+                        @Override
+                        public void onComplete(Response<AiMessage> response) {
+                            String answer = response.content().text();
+                            try {
+                                completeChat(preparation, answer);
+                            } catch (Exception e) {
+                                log.error("[流式对话结果持久化失败，sessionId: {}]", sessionId, e);
+                            }
+                            listener.onComplete(answer);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            log.error("[流式生成失败，sessionId: {}]", sessionId, error);
+                            listener.onError(error);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 对话准备：保存用户消息、查询语义缓存、检索上下文
+     * 命中缓存或没有检索结果时直接给出回答（已持久化）
+     */
+    private ChatPreparation prepareChat(String sessionId, String question, RetrievalMode mode) {
         log.info("[收到对话请求，sessionId: {}, question: {}]", sessionId, question);
 
         Conversation conversation = conversationRepository.findBySessionId(sessionId)
@@ -132,18 +224,18 @@ public class ConversationService {
             // 只有在没有历史上下文时才使用缓存（避免上下文丢失）
             log.info("[对话语义缓存命中]");
             addMessage(conversation.getId(), "assistant", cachedAnswer, null, null);
-            return cachedAnswer;
+            return ChatPreparation.immediate(cachedAnswer);
         }
 
         // 使用父文档混合检索：向量+全文检索子块，再加载父块作为上下文
         List<ParentAwareHybridRetriever.RetrievalResult> retrievalResults =
-                parentAwareHybridRetriever.retrieve(question, queryEmbedding, 10, 3);
+                parentAwareHybridRetriever.retrieve(question, queryEmbedding, 10, 3, mode);
 
         if (retrievalResults.isEmpty()) {
             log.warn("[未找到相关文档片段]");
             String answer = "抱歉，我在知识库中没有找到与您问题相关的信息。";
             addMessage(conversation.getId(), "assistant", answer, null, null);
-            return answer;
+            return ChatPreparation.immediate(answer);
         }
 
         // 构建带引用的上下文
@@ -184,35 +276,70 @@ public class ConversationService {
             log.info("");
         });
 
-        String answer = ragService.answerWithContext(question, context, history);
+        Set<Long> documentIds = retrievalResults.stream()
+                .map(ParentAwareHybridRetriever.RetrievalResult::getDocumentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
 
-        addMessage(conversation.getId(), "assistant", answer, context, retrievedChunksJson);
+        return new ChatPreparation(sessionId, question, conversation.getId(), history, queryEmbedding,
+                context, retrievedChunksJson, documentIds, null);
+    }
 
-        if (conversation.getMessageCount() == 2) {
-            String title = generateTitle(question);
-            conversation.setTitle(title);
-            conversationRepository.save(conversation);
-            log.info("[对话标题已更新: {}]", title);
-        }
+    /**
+     * 对话收尾：保存助手消息、更新标题与会话缓存、写入语义缓存
+     */
+    private void completeChat(ChatPreparation preparation, String answer) {
+        Long conversationId = preparation.conversationId();
+        addMessage(conversationId, "assistant", answer, preparation.context(), preparation.retrievedChunksJson());
 
-        String cacheKey = CacheConstants.CONVERSATION_CACHE_PREFIX + sessionId;
-        redisTemplate.opsForValue().set(cacheKey, conversation.getId().toString(), 
-                CacheConstants.CONVERSATION_CACHE_TTL, TimeUnit.SECONDS);
+        conversationRepository.findById(conversationId).ifPresent(conversation -> {
+            if (conversation.getMessageCount() == 2) {
+                String title = generateTitle(preparation.question());
+                conversation.setTitle(title);
+                conversationRepository.save(conversation);
+                log.info("[对话标题已更新: {}]", title);
+            }
+        });
 
+        String cacheKey = CacheConstants.CONVERSATION_CACHE_PREFIX + preparation.sessionId();
+        redisTemplate.opsForValue().set(cacheKey, conversationId.toString(),
+                CacheConstants.CONVERSATION_CACHE_TTL, TimeUnit.SECONDS);
 
-        // 5. 存入语义缓存（供后续相似问题使用）
-        if(history.isEmpty()){
-            semanticCacheService.put(question, queryEmbedding, answer);
+        // 存入语义缓存（供后续相似问题使用）
+        if (preparation.history().isEmpty()) {
+            semanticCacheService.put(preparation.question(), preparation.queryEmbedding(), answer,
+                    preparation.documentIds());
             log.info("[答案已存入语义缓存]");
         }
 
-
         log.info("[对话完成]");
-        return answer;
     }
 
     private String generateTitle(String question) {
         String title = question.length() > 20 ? question.substring(0, 20) + "..." : question;
         return title.replace("\n", " ").trim();
     }
+
+    /**
+     * 流式对话回调
+     */
+    public interface ChatStreamListener {
+        void onToken(String token);
+
+        void onComplete(String answer);
+
+        void onError(Throwable error);
+    }
+
+    /**
+     * 对话准备结果；immediateAnswer 非空表示无需调用大模型
+     */
+    private record ChatPreparation(String sessionId, String question, Long conversationId,
+                                   List<ChatMessage> history, float[] queryEmbedding,
+                                   String context, String retrievedChunksJson, Set<Long> documentIds,
+                                   String immediateAnswer) {
+        static ChatPreparation immediate(String answer) {
+            return new ChatPreparation(null, null, null, List.of(), null, null, null, Set.of(), answer);
+        }
+    }
 }
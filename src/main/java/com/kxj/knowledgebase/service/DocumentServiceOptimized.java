@@ -1,36 +1,46 @@
 package com.kxj.knowledgebase.service;
 
 import com.kxj.knowledgebase.config.DocumentProcessingProperties;
-import com.kxj.knowledgebase.constants.CacheConstants;
 import com.kxj.knowledgebase.dto.BatchUploadProgress;
 import com.kxj.knowledgebase.entity.Document;
 import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.entity.IngestionJobItem;
 import com.kxj.knowledgebase.repository.DocumentRepository;
 import com.kxj.knowledgebase.service.cache.CacheInvalidationService;
 import com.kxj.knowledgebase.service.embedding.EmbeddingService;
+import com.kxj.knowledgebase.service.ingestion.IngestionJobService;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
 import com.kxj.knowledgebase.service.parser.DocumentParserFactory;
 import com.kxj.knowledgebase.service.parser.ParseResult;
 import com.kxj.knowledgebase.service.storage.MinioService;
 import com.kxj.knowledgebase.service.storage.VectorStoreService;
 import com.kxj.knowledgebase.util.FileUtils;
 import com.kxj.knowledgebase.util.StringUtils;
+import com.kxj.knowledgebase.util.VectorCodec;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -49,36 +59,52 @@ public class DocumentServiceOptimized {
     private final MinioService minioService;
     private final ExecutorService embeddingExecutorService;
     private final DocumentProcessingProperties documentProcessingProperties;
-    private final RedisTemplate<String, Object> redisTemplate;
     private final Semaphore globalSemaphore;
     private final CacheInvalidationService cacheInvalidationService;
     private final DocumentParserFactory parserFactory;
     private final HierarchicalChunkService hierarchicalChunkService;
+    private final RagMetrics ragMetrics;
+    private final IngestionJobService ingestionJobService;
 
-    @Transactional
-    public String processDocumentsBatch(List<MultipartFile> files) {
-        log.info("[开始文档去重，原始文件数: {}]", files.size());
+    /**
+     * 批量入库
+     *
+     * @param files   上传的文件
+     * @param replace 是否按文件名替换已有文档：为 true 时同名文档作为新版本增量更新，
+     *                此时同一批次内不允许出现同名文件；为 false 时每个文件都创建新文档
+     * @return 任务ID
+     */
+    public String processDocumentsBatch(List<MultipartFile> files, boolean replace) {
+        if (replace) {
+            rejectDuplicateFileNames(files);
+        }
+        log.info("[开始文档去重，原始文件数: {}, 替换同名文档: {}]", files.size(), replace);
 
         Set<String> fileHashSet = new HashSet<>();
-        Map<String, MultipartFile> hashToFileMap = new HashMap<>();
+        Map<String, SpooledUpload> hashToFileMap = new HashMap<>();
 
+        // 上传文件先暂存到本地磁盘，后续哈希、上传 MinIO、解析都基于暂存文件，堆内存不随批次大小增长
         for (MultipartFile file : files) {
+            SpooledUpload upload;
             try {
-                String fileHash = FileUtils.calculateFileHash(file);
-                if (!fileHashSet.contains(fileHash)) {
-                    fileHashSet.add(fileHash);
-                    hashToFileMap.put(fileHash, file);
-                } else {
-                    log.info("[跳过重复文件: {}]", file.getOriginalFilename());
-                }
+                upload = spool(file);
             } catch (IOException e) {
-                log.error("[计算文件哈希失败: {}]", file.getOriginalFilename(), e);
+                log.error("[暂存上传文件失败: {}]", file.getOriginalFilename(), e);
+                continue;
+            }
+
+            if (!fileHashSet.contains(upload.fileHash())) {
+                fileHashSet.add(upload.fileHash());
+                hashToFileMap.put(upload.fileHash(), upload);
+            } else {
+                log.info("[跳过重复文件: {}]", upload.fileName());
+                deleteSpoolFile(upload.path());
             }
         }
 
         log.info("[第一层过滤完成，去重后文件数: {}]", fileHashSet.size());
 
-        List<MultipartFile> uniqueFiles = new ArrayList<>();
+        List<SpooledUpload> uniqueFiles = new ArrayList<>();
         if (!fileHashSet.isEmpty()) {
             List<String> hashList = new ArrayList<>(fileHashSet);
             List<Document> existingDocs = documentRepository.findByFileHashIn(hashList);
@@ -87,6 +113,13 @@ public class DocumentServiceOptimized {
                     .collect(Collectors.toSet());
             log.info("[数据库已存在文档数: {}]", existingHashes.size());
 
+            existingHashes.forEach(hash -> {
+                SpooledUpload existing = hashToFileMap.get(hash);
+                if (existing != null) {
+                    deleteSpoolFile(existing.path());
+                }
+            });
+
             uniqueFiles = fileHashSet.stream()
                     .filter(hash -> !existingHashes.contains(hash))
                     .map(hashToFileMap::get)
@@ -98,57 +131,112 @@ public class DocumentServiceOptimized {
         log.info("[开始批量处理文档，文档数量: {}]", uniqueFiles.size());
         String taskId = UUID.randomUUID().toString();
 
-        String completedKey = CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":completed";
-        String failedKey = CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":failed";
-        String totalKey = CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":total";
+        List<IngestionJobItem> items;
+        try {
+            // 显式要求替换时，同名文档视为新版本：沿用原文档记录，只对新增/变化的 chunk 向量化
+            Map<String, Long> previousVersions = replace ? findPreviousVersions(uniqueFiles) : Map.of();
+            if (!previousVersions.isEmpty()) {
+                log.info("[同名文档将增量更新: {}]", previousVersions.keySet());
+            }
 
-        redisTemplate.opsForValue().set(
-                completedKey, 0, CacheConstants.DOCUMENT_UPLOAD_PROGRESS_TTL, java.util.concurrent.TimeUnit.SECONDS
-        );
-        redisTemplate.opsForValue().set(
-                failedKey, 0, CacheConstants.DOCUMENT_UPLOAD_PROGRESS_TTL, java.util.concurrent.TimeUnit.SECONDS
-        );
-        redisTemplate.opsForValue().set(
-                totalKey, uniqueFiles.size(), CacheConstants.DOCUMENT_UPLOAD_PROGRESS_TTL, java.util.concurrent.TimeUnit.SECONDS
-        );
+            // 入库进度与检查点持久化到数据库，进程重启后可继续
+            items = ingestionJobService.createJob(taskId, uniqueFiles, previousVersions);
+        } catch (RuntimeException e) {
+            // 任务未创建成功，暂存文件不会再被任何条目引用
+            uniqueFiles.forEach(upload -> deleteSpoolFile(upload.path()));
+            throw e;
+        }
+        submitItems(items);
 
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (MultipartFile file : uniqueFiles) {
-            final String fileName = file.getOriginalFilename();
-            final long fileSize = file.getSize();
-            final String contentType = file.getContentType();
+        return taskId;
+    }
 
-            try {
-                final byte[] fileBytes = file.getBytes();
-                final String fileHash = FileUtils.calculateFileHash(fileBytes);
-
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                    try {
-                        globalSemaphore.acquire();
-                        log.info("[获取信号量，开始处理文档: {}]", fileName);
-                        long startTime = System.currentTimeMillis();
-                        processDocument(fileName, fileSize, contentType, fileBytes, fileHash);
-                        long processingTime = System.currentTimeMillis() - startTime;
-                        incrementCounter(completedKey);
-                        log.info("[文档处理完成: {}, 耗时: {}ms]", fileName, processingTime);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.error("[文档处理被中断: {}]", fileName, e);
-                        incrementCounter(failedKey);
-                    } catch (Exception e) {
-                        log.error("[文档处理失败: {}]", fileName, e);
-                        incrementCounter(failedKey);
-                    } finally {
-                        globalSemaphore.release();
-                        log.info("[释放信号量，文档: {}]", fileName);
+    /**
+     * 替换模式下文件名即文档标识，同一批次内的同名文件无法确定哪一个是新版本，直接拒绝
+     */
+    private void rejectDuplicateFileNames(List<MultipartFile> files) {
+        Set<String> seen = new HashSet<>();
+        Set<String> duplicates = new HashSet<>();
+        for (MultipartFile file : files) {
+            String fileName = file.getOriginalFilename();
+            if (fileName != null && !seen.add(fileName)) {
+                duplicates.add(fileName);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            throw new IllegalArgumentException("替换模式下同一批次不能包含同名文件: " + duplicates);
+        }
+    }
+
+    /**
+     * 查找与待上传文件同名的已有文档（同名多条时取最新的）
+     */
+    private Map<String, Long> findPreviousVersions(List<SpooledUpload> uploads) {
+        List<String> fileNames = uploads.stream()
+                .map(SpooledUpload::fileName)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (fileNames.isEmpty()) {
+            return Map.of();
+        }
+        return documentRepository.findByFileNameIn(fileNames).stream()
+                .collect(Collectors.toMap(Document::getFileName, Document::getId, Math::max));
+    }
+
+    /**
+     * 启动时恢复上次进程退出前未完成的入库条目
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        List<IngestionJobItem> items = ingestionJobService.findUnfinishedItems();
+        if (items.isEmpty()) {
+            return;
+        }
+        log.info("[恢复未完成的入库任务] 文档数: {}", items.size());
+        submitItems(items);
+    }
+
+    private void submitItems(List<IngestionJobItem> items) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (IngestionJobItem item : items) {
+            final String fileName = item.getFileName();
+
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                try {
+                    globalSemaphore.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("[文档处理被中断，重启后恢复: {}]", fileName);
+                    return;
+                }
+                try {
+                    log.info("[获取信号量，开始处理文档: {}, 阶段: {}]", fileName, item.getStatus());
+                    long startTime = System.currentTimeMillis();
+                    processItem(item);
+                    long processingTime = System.currentTimeMillis() - startTime;
+                    log.info("[文档处理完成: {}, 耗时: {}ms]", fileName, processingTime);
+                } catch (Exception e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // 停机中断：保留检查点，重启后从最后提交的批次继续
+                        log.warn("[文档处理被中断，重启后恢复: {}]", fileName);
+                        return;
                     }
-                }, embeddingExecutorService);
+                    log.error("[文档处理失败: {}]", fileName, e);
+                    ingestionJobService.markFailed(item, e.getMessage());
+                } finally {
+                    globalSemaphore.release();
+                    if (item.getStatus().isFinished()) {
+                        if (item.getSpoolPath() != null) {
+                            deleteSpoolFile(Path.of(item.getSpoolPath()));
+                        }
+                        ingestionJobService.completeJobIfFinished(item.getJobId());
+                    }
+                    log.info("[释放信号量，文档: {}]", fileName);
+                }
+            }, embeddingExecutorService);
 
-                futures.add(future);
-            } catch (IOException e) {
-                log.error("[读取文件失败: {}]", fileName, e);
-                incrementCounter(failedKey);
-            }
+            futures.add(future);
         }
 
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((result, ex) -> {
@@ -157,139 +245,325 @@ public class DocumentServiceOptimized {
             } else {
                 log.info("[批量处理全部完成]");
             }
-            // 清除问答缓存，确保新上传的文档能被检索到
             cacheInvalidationService.onBatchProcessingCompleted();
         });
-
-        return taskId;
     }
 
-    @Transactional
-    public void processDocument(String fileName, long fileSize, String contentType, byte[] fileBytes, String fileHash) throws IOException {
+    /**
+     * 处理单个入库条目，从其检查点所在阶段继续
+     */
+    private void processItem(IngestionJobItem item) throws IOException {
         long startTime = System.currentTimeMillis();
+        String fileName = item.getFileName();
         log.info("[开始处理文档: {}]", fileName);
 
+        Path localFile = item.getSpoolPath() != null ? Path.of(item.getSpoolPath()) : null;
+        boolean downloaded = false;
+        Document document;
+
+        if (item.getStatus() == IngestionJobItem.Status.PENDING) {
+            if (localFile == null || !Files.exists(localFile)) {
+                throw new IOException("暂存文件已丢失，无法恢复: " + fileName);
+            }
+            document = uploadAndRegister(item, localFile);
+        } else {
+            document = documentRepository.findById(item.getDocumentId())
+                    .orElseThrow(() -> new IllegalStateException("文档不存在: " + item.getDocumentId()));
+            if (localFile == null || !Files.exists(localFile)) {
+                // 暂存文件已随进程退出丢失，从 MinIO 取回
+                localFile = downloadToSpool(document.getFilePath());
+                downloaded = true;
+            }
+        }
+
+        try {
+            log.info("[开始流式处理文档]");
+            processDocumentInBatchesOptimized(localFile, document, item);
+        } finally {
+            if (downloaded) {
+                deleteSpoolFile(localFile);
+            }
+        }
+
+        document.setProcessed(true);
+        document.setUpdateTime(LocalDateTime.now());
+        document = documentRepository.save(document);
+        ingestionJobService.markCompleted(item);
+
+        long endTime = System.currentTimeMillis();
+        long duration = endTime - startTime;
+        log.info("[文档处理完成: {}, 耗时: {}ms, 片段数: {}]", fileName, duration, document.getChunkCount());
+    }
+
+    /**
+     * 上传 MinIO 并创建文档记录（检查点 UPLOADED）
+     * 条目指向已有文档时更新该文档为新版本，并删除旧版本的 MinIO 文件
+     */
+    private Document uploadAndRegister(IngestionJobItem item, Path localFile) throws IOException {
+        String fileName = item.getFileName();
         String fileType = FileUtils.getFileExtension(fileName);
-        String objectName = fileHash + "/" + fileName;
+        String objectName = item.getFileHash() + "/" + fileName;
 
         log.info("[开始上传文件到 MinIO: {}]", objectName);
-        minioService.uploadFile(objectName, new java.io.ByteArrayInputStream(fileBytes), fileSize, contentType);
+        try (InputStream inputStream = Files.newInputStream(localFile)) {
+            minioService.uploadFile(objectName, inputStream, item.getFileSize(), item.getContentType());
+        }
+
+        Document previous = item.getDocumentId() != null
+                ? documentRepository.findById(item.getDocumentId()).orElse(null)
+                : null;
+        if (previous != null) {
+            String previousObject = previous.getFilePath();
+            previous.setFileType(fileType);
+            previous.setFilePath(objectName);
+            previous.setFileSize(item.getFileSize());
+            previous.setFileHash(item.getFileHash());
+            previous.setVersion(previous.getVersion() + 1);
+            previous.setProcessed(false);
+            previous.setUpdateTime(LocalDateTime.now());
+            Document document = ingestionJobService.registerUpload(item, previous, objectName);
+            log.info("[文档新版本: {}, documentId={}, version={}]", fileName, document.getId(), document.getVersion());
+
+            if (!objectName.equals(previousObject)) {
+                try {
+                    minioService.deleteFile(previousObject);
+                } catch (Exception e) {
+                    log.warn("[删除旧版本 MinIO 文件失败: {}]", previousObject, e);
+                }
+            }
+            return document;
+        }
 
         Document document = Document.builder()
                 .fileName(fileName)
                 .fileType(fileType)
                 .filePath(objectName)
-                .fileSize(fileSize)
-                .fileHash(fileHash)
+                .fileSize(item.getFileSize())
+                .fileHash(item.getFileHash())
                 .chunkCount(0)
                 .uploadTime(LocalDateTime.now())
                 .updateTime(LocalDateTime.now())
                 .processed(false)
+                .version(1)
                 .build();
 
-        document = documentRepository.save(document);
-
-        log.info("[开始流式处理文档]");
-        processDocumentInBatchesOptimized(objectName, document);
-
-        document.setProcessed(true);
-        document.setUpdateTime(LocalDateTime.now());
-        document = documentRepository.save(document);
+        return ingestionJobService.registerUpload(item, document, objectName);
+    }
 
-        long endTime = System.currentTimeMillis();
-        long duration = endTime - startTime;
-        log.info("[文档处理完成: {}, 耗时: {}ms, 片段数: {}]", fileName, duration, document.getChunkCount());
+    /**
+     * 从 MinIO 下载到本地暂存目录（恢复时使用）
+     */
+    private Path downloadToSpool(String objectName) throws IOException {
+        Path dir = Path.of(documentProcessingProperties.getSpoolDir());
+        Files.createDirectories(dir);
+        Path spoolFile = Files.createTempFile(dir, "resume-", ".tmp");
+        try (InputStream in = minioService.downloadFile(objectName)) {
+            Files.copy(in, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            deleteSpoolFile(spoolFile);
+            throw e;
+        }
+        return spoolFile;
     }
 
-    private void processDocumentInBatchesOptimized(String objectName, Document document) throws IOException {
-        log.info("[开始从 MinIO 下载文件: {}]", objectName);
+    private void processDocumentInBatchesOptimized(Path spoolFile, Document document, IngestionJobItem item)
+            throws IOException {
+        // 直接从本地暂存文件解析，无需再从 MinIO 下载
+        log.info("[开始分层切分文档：父块+子块结构]");
 
-        try (InputStream inputStream = minioService.downloadFile(objectName)) {
+        // 使用解析器提取文本内容
+        String fileType = document.getFileType();
+        var parser = parserFactory.getParser(fileType);
+        long parseStart = System.nanoTime();
+        ParseResult parseResult = parser.parse(spoolFile, document.getFileName());
+        ragMetrics.ingestionStage("parse", parseStart);
 
-            log.info("[开始分层切分文档：父块+子块结构]");
+        if (!parseResult.isSuccess()) {
+            throw new IOException("文档解析失败: " + parseResult.getErrorMessage());
+        }
 
-            // 使用解析器提取文本内容
-            String fileType = document.getFileType();
-            var parser = parserFactory.getParser(fileType);
-            ParseResult parseResult = parser.parse(inputStream, document.getFileName());
+        // 使用分层切分服务创建父块+子块结构
+        List<DocumentChunk> allChunks = hierarchicalChunkService.createHierarchicalChunks(
+                parseResult,
+                document
+        );
 
-            if (!parseResult.isSuccess()) {
-                throw new IOException("文档解析失败: " + parseResult.getErrorMessage());
+        if (allChunks.isEmpty()) {
+            log.warn("[文档内容为空: {}]", document.getFileName());
+            if (document.getVersion() > 1) {
+                vectorStoreService.deleteChunksByDocumentId(document.getId());
+                cacheInvalidationService.onDocumentDeleted(document.getId());
             }
+            document.setChunkCount(0);
+            return;
+        }
 
-            // 使用分层切分服务创建父块+子块结构
-            List<DocumentChunk> allChunks = hierarchicalChunkService.createHierarchicalChunks(
-                    parseResult,
-                    document
-            );
+        if (document.getVersion() > 1) {
+            // 新版本：按内容哈希与已有 chunks 比对，只写入差异
+            reconcileChunks(document, allChunks);
+            return;
+        }
 
-            if (allChunks.isEmpty()) {
-                log.warn("[文档内容为空: {}]", document.getFileName());
-                document.setChunkCount(0);
-                return;
-            }
+        // 统计父子块数量
+        long parentCount = allChunks.stream().filter(c -> c.getChunkLevel() == 0).count();
+        long childCount = allChunks.stream().filter(c -> c.getChunkLevel() == 1).count();
+
+        // 验证 document_id 一致性
+        long distinctDocIds = allChunks.stream().map(DocumentChunk::getDocumentId).distinct().count();
+        Long firstDocId = allChunks.isEmpty() ? null : allChunks.get(0).getDocumentId();
+        log.info("[文档切分完成: {} 个父块, {} 个子块, documentId={}, 一致性检查: {} 个不同值]",
+                parentCount, childCount, firstDocId, distinctDocIds);
+
+        if (distinctDocIds != 1) {
+            log.error("[严重错误：document_id 不一致！发现 {} 个不同的值]", distinctDocIds);
+            allChunks.stream()
+                    .collect(Collectors.groupingBy(DocumentChunk::getDocumentId, Collectors.counting()))
+                    .forEach((docId, count) -> log.error("  document_id={}: {} 个chunks", docId, count));
+        }
 
-            // 统计父子块数量
-            long parentCount = allChunks.stream().filter(c -> c.getChunkLevel() == 0).count();
-            long childCount = allChunks.stream().filter(c -> c.getChunkLevel() == 1).count();
-
-            // 验证 document_id 一致性
-            long distinctDocIds = allChunks.stream().map(DocumentChunk::getDocumentId).distinct().count();
-            Long firstDocId = allChunks.isEmpty() ? null : allChunks.get(0).getDocumentId();
-            log.info("[文档切分完成: {} 个父块, {} 个子块, documentId={}, 一致性检查: {} 个不同值]",
-                    parentCount, childCount, firstDocId, distinctDocIds);
-
-            if (distinctDocIds != 1) {
-                log.error("[严重错误：document_id 不一致！发现 {} 个不同的值]", distinctDocIds);
-                allChunks.stream()
-                        .collect(Collectors.groupingBy(DocumentChunk::getDocumentId, Collectors.counting()))
-                        .forEach((docId, count) -> log.error("  document_id={}: {} 个chunks", docId, count));
-            }
+        // 预分配主键并在写入前确定关联 ID（parent_chunk_id, prev/next chunk_id），每个 chunk 只插入一次
+        // 恢复时沿用检查点中的主键，已提交批次中的关联 ID 与后续批次保持一致
+        long persistStart = System.nanoTime();
+        int batchSize = documentProcessingProperties.getBatchSize();
+        int totalBatches = (allChunks.size() + batchSize - 1) / batchSize;
+        List<Long> chunkIds = resumableChunkIds(item, document, allChunks.size(), totalBatches);
+        resolveChunkRelationships(allChunks, chunkIds);
+
+        // 分批插入 chunks，每批与检查点在同一事务中提交
+        int startBatch = item.getPersistedBatches();
+        if (startBatch > 0) {
+            log.info("[从检查点恢复] 跳过已提交的 {}/{} 个批次", startBatch, totalBatches);
+        }
 
-            // 分批保存所有 chunks
-            int batchSize = documentProcessingProperties.getBatchSize();
-            for (int i = 0; i < allChunks.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, allChunks.size());
-                List<DocumentChunk> batch = allChunks.subList(i, end);
+        // 只对未提交批次中的子块向量化，已提交批次的向量已在库中
+        List<DocumentChunk> pending = allChunks.subList(Math.min(startBatch * batchSize, allChunks.size()), allChunks.size());
+        hierarchicalChunkService.embedChildChunks(pending);
 
-                // 验证批次内的 document_id
-                Set<Long> batchDocIds = batch.stream().map(DocumentChunk::getDocumentId).collect(Collectors.toSet());
-                if (batchDocIds.size() > 1) {
-                    log.error("[批次 {} 包含多个 document_id: {}]", (i / batchSize) + 1, batchDocIds);
-                }
+        for (int i = startBatch * batchSize; i < allChunks.size(); i += batchSize) {
+            int end = Math.min(i + batchSize, allChunks.size());
+            List<DocumentChunk> batch = allChunks.subList(i, end);
 
-                vectorStoreService.saveChunks(new ArrayList<>(batch));
-                log.info("[已保存批次 {}/{}, 片段数: {}]",
-                    (i / batchSize) + 1,
-                    (allChunks.size() + batchSize - 1) / batchSize,
-                    batch.size());
+            // 验证批次内的 document_id
+            Set<Long> batchDocIds = batch.stream().map(DocumentChunk::getDocumentId).collect(Collectors.toSet());
+            if (batchDocIds.size() > 1) {
+                log.error("[批次 {} 包含多个 document_id: {}]", (i / batchSize) + 1, batchDocIds);
             }
 
-            // 更新关联 ID（parent_chunk_id, prev/next chunk_id）
-            updateChunkRelationships(allChunks);
+            ingestionJobService.persistBatch(item, new ArrayList<>(batch), (i / batchSize) + 1);
+            log.info("[已保存批次 {}/{}, 片段数: {}]",
+                (i / batchSize) + 1,
+                totalBatches,
+                batch.size());
+        }
+        ragMetrics.ingestionStage("persist", persistStart);
 
-            document.setChunkCount((int) childCount); // 文档的 chunkCount 记录子块数（可检索的）
-            log.info("[文档处理完成: {} 个父块, {} 个子块]", parentCount, childCount);
+        document.setChunkCount((int) childCount); // 文档的 chunkCount 记录子块数（可检索的）
+
+        // 失效与新内容语义相近的问答缓存（恢复时只有本次向量化的子块）
+        cacheInvalidationService.onDocumentUploaded(document.getId(), pending.stream()
+                .filter(c -> c.getChunkLevel() == 1)
+                .map(c -> VectorCodec.decodeText(c.getEmbedding()))
+                .toList());
+        log.info("[文档处理完成: {} 个父块, {} 个子块]", parentCount, childCount);
+    }
+
+
+    /**
+     * 增量入库：按 (层级, 内容哈希) 与库中已有 chunks 比对
+     * - 未变化的 chunk 沿用原主键与向量，只更新位置与关联字段
+     * - 新增/变化的 chunk 分配新主键，仅对其中的子块向量化后插入
+     * - 新版本中已不存在的 chunk 一次性删除
+     * 比对只依赖库中当前数据，进程中断后重新执行结果一致
+     */
+    private void reconcileChunks(Document document, List<DocumentChunk> allChunks) {
+        long persistStart = System.nanoTime();
+
+        // 相同内容可能出现多次，按出现顺序依次复用
+        Map<String, ArrayDeque<Long>> existingIds = new HashMap<>();
+        for (VectorStoreService.ChunkHash existing : vectorStoreService.findChunkHashes(document.getId())) {
+            existingIds.computeIfAbsent(existing.chunkLevel() + ":" + existing.contentHash(), k -> new ArrayDeque<>())
+                    .add(existing.id());
         }
+
+        List<DocumentChunk> kept = new ArrayList<>();
+        List<DocumentChunk> added = new ArrayList<>();
+        Long[] ids = new Long[allChunks.size()];
+        for (int i = 0; i < allChunks.size(); i++) {
+            DocumentChunk chunk = allChunks.get(i);
+            ArrayDeque<Long> candidates = existingIds.get(chunk.getChunkLevel() + ":" + chunk.getContentHash());
+            if (candidates != null && !candidates.isEmpty()) {
+                ids[i] = candidates.poll();
+                kept.add(chunk);
+            } else {
+                added.add(chunk);
+            }
+        }
+        List<Long> removedIds = existingIds.values().stream()
+                .flatMap(ArrayDeque::stream)
+                .toList();
+
+        Iterator<Long> newIds = vectorStoreService.allocateChunkIds(added.size()).iterator();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null) {
+                ids[i] = newIds.next();
+            }
+        }
+        resolveChunkRelationships(allChunks, List.of(ids));
+
+        hierarchicalChunkService.embedChildChunks(added);
+        vectorStoreService.applyChunkChanges(document.getId(), kept, added, removedIds,
+                documentProcessingProperties.getBatchSize());
+        ragMetrics.ingestionStage("persist", persistStart);
+
+        long childCount = allChunks.stream().filter(c -> c.getChunkLevel() == 1).count();
+        document.setChunkCount((int) childCount);
+
+        cacheInvalidationService.onDocumentUpdated(document.getId(), added.stream()
+                .filter(c -> c.getChunkLevel() == 1)
+                .map(c -> VectorCodec.decodeText(c.getEmbedding()))
+                .toList());
+        log.info("[增量入库完成: documentId={}, version={}, 保留 {} 个, 新增 {} 个, 删除 {} 个]",
+                document.getId(), document.getVersion(), kept.size(), added.size(), removedIds.size());
     }
 
+    /**
+     * 获取本次写入使用的 chunk 主键：检查点中已有且数量一致则沿用，否则重新分配
+     */
+    private List<Long> resumableChunkIds(IngestionJobItem item, Document document, int chunkCount, int totalBatches) {
+        Long[] saved = item.getChunkIds();
+        if (item.getStatus() == IngestionJobItem.Status.CHUNKED && saved != null && saved.length == chunkCount) {
+            return List.of(saved);
+        }
+        if (item.getPersistedBatches() > 0) {
+            // 重新切分结果与检查点不一致（解析器或切分规则已变化），清除已写入的部分重新开始
+            log.warn("[检查点与切分结果不一致，重新写入文档 {} 的 chunks]", document.getId());
+            vectorStoreService.deleteChunksByDocumentId(document.getId());
+        }
+        List<Long> chunkIds = vectorStoreService.allocateChunkIds(chunkCount);
+        ingestionJobService.markChunked(item, chunkIds, totalBatches);
+        return chunkIds;
+    }
 
     /**
-     * 更新 chunks 之间的关联关系
+     * 分配主键并解析 chunks 之间的关联关系（写入数据库之前）
+     * - 按顺序为 chunks 分配预取的主键
      * - 更新子块的 parent_chunk_id（从临时ID更新为真实ID）
      * - 更新相邻子块的 prev/next chunk_id
      */
-    private void updateChunkRelationships(List<DocumentChunk> allChunks) {
-        log.info("[开始更新 chunks 关联关系]");
+    private void resolveChunkRelationships(List<DocumentChunk> allChunks, List<Long> chunkIds) {
+        if (chunkIds.size() != allChunks.size()) {
+            throw new IllegalStateException("预分配ID数量与 chunk 数量不一致: " + chunkIds.size() + " != " + allChunks.size());
+        }
 
-        // 1. 建立临时索引到真实 chunk 的映射
+        // 1. 分配主键，并建立临时父块ID到真实ID的映射
         // 父块使用临时负ID：-1, -2, -3...
         Map<Long, Long> tempIdToRealId = new HashMap<>();
 
         int parentIndex = 0;
-        for (DocumentChunk chunk : allChunks) {
+        for (int i = 0; i < allChunks.size(); i++) {
+            DocumentChunk chunk = allChunks.get(i);
+            chunk.setId(chunkIds.get(i));
             if (chunk.getChunkLevel() == 0) {
-                // 父块：使用临时负ID
                 long tempId = -1L * (parentIndex + 1);
                 tempIdToRealId.put(tempId, chunk.getId());
                 parentIndex++;
@@ -301,71 +575,69 @@ public class DocumentServiceOptimized {
                 .filter(c -> c.getChunkLevel() == 1 && c.getParentChunkId() != null && c.getParentChunkId() < 0)
                 .collect(Collectors.groupingBy(DocumentChunk::getParentChunkId));
 
-        log.info("[父块分组完成] {} 个父块有子块", parentToChildren.size());
-
-        // 3. 更新子块的 parent_chunk_id（从临时ID更新为真实ID）
-        List<DocumentChunk> chunksToUpdate = new ArrayList<>();
-        for (DocumentChunk chunk : allChunks) {
-            if (chunk.getChunkLevel() == 1 && chunk.getParentChunkId() != null) {
-                Long tempParentId = chunk.getParentChunkId();
-                if (tempParentId < 0) {
-                    Long realParentId = tempIdToRealId.get(tempParentId);
-                    if (realParentId != null) {
-                        chunk.setParentChunkId(realParentId);
-                        chunksToUpdate.add(chunk);
-                    } else {
-                        log.warn("[未找到临时父块ID的映射: tempId={}]", tempParentId);
-                    }
-                }
-            }
-        }
-
-        // 4. 按父块分组，设置子块之间的 prev/next 关系
+        // 3. 按父块分组，设置子块的 parent_chunk_id 及 prev/next 关系
         for (Map.Entry<Long, List<DocumentChunk>> entry : parentToChildren.entrySet()) {
             Long tempParentId = entry.getKey();
             List<DocumentChunk> children = entry.getValue();
             Long realParentId = tempIdToRealId.get(tempParentId);
 
             if (realParentId == null) {
-                log.warn("[跳过 prev/next 设置: 临时父块ID {} 未找到映射]", tempParentId);
+                log.warn("[未找到临时父块ID的映射: tempId={}]", tempParentId);
                 continue;
             }
 
             // 按 chunkIndex 排序
             children.sort(Comparator.comparingInt(DocumentChunk::getChunkIndex));
 
-            log.debug("[父块 {}] 设置 {} 个子块的 prev/next 关系", realParentId, children.size());
-
             for (int i = 0; i < children.size(); i++) {
                 DocumentChunk current = children.get(i);
+                current.setParentChunkId(realParentId);
                 if (i > 0) {
                     current.setPrevChunkId(children.get(i - 1).getId());
                 }
                 if (i < children.size() - 1) {
                     current.setNextChunkId(children.get(i + 1).getId());
                 }
-                if (!chunksToUpdate.contains(current)) {
-                    chunksToUpdate.add(current);
-                }
             }
         }
 
-        // 5. 批量保存更新
-        if (!chunksToUpdate.isEmpty()) {
-            vectorStoreService.saveChunks(chunksToUpdate);
-            log.info("[关联关系更新完成: {} 个 chunks 已更新]", chunksToUpdate.size());
+        log.info("[关联关系解析完成] {} 个父块有子块", parentToChildren.size());
+    }
+
+    /**
+     * 将上传文件流式写入本地暂存目录并计算哈希
+     */
+    private SpooledUpload spool(MultipartFile file) throws IOException {
+        Path dir = Path.of(documentProcessingProperties.getSpoolDir());
+        Files.createDirectories(dir);
+        Path spoolFile = Files.createTempFile(dir, "upload-", ".tmp");
+        try {
+            try (InputStream in = file.getInputStream()) {
+                Files.copy(in, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String fileHash = FileUtils.calculateFileHash(spoolFile);
+            return new SpooledUpload(file.getOriginalFilename(), file.getSize(), file.getContentType(),
+                    fileHash, spoolFile);
+        } catch (IOException e) {
+            deleteSpoolFile(spoolFile);
+            throw e;
         }
     }
 
-    private void incrementCounter(String key) {
+    private void deleteSpoolFile(Path spoolFile) {
         try {
-            Long result = redisTemplate.opsForValue().increment(key, 1);
-            log.debug("[计数器增加: key={}, result={}]", key, result);
-        } catch (Exception e) {
-            log.error("[计数器增加失败: key={}]", key, e);
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException e) {
+            log.warn("[删除暂存文件失败: {}]", spoolFile, e);
         }
     }
 
+    /**
+     * 已暂存到本地磁盘的上传文件
+     */
+    public record SpooledUpload(String fileName, long fileSize, String contentType, String fileHash, Path path) {
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public void deleteDocument(Long documentId) {
         log.info("[开始删除文档: {}]", documentId);
@@ -389,8 +661,8 @@ public class DocumentServiceOptimized {
         documentRepository.deleteById(documentId);
         log.info("[文档删除完成: {}]", documentId);
 
-        // 清除问答缓存，避免返回已删除文档的内容
-        cacheInvalidationService.onDocumentDeleted();
+        // 失效依赖该文档的问答缓存，避免返回已删除文档的内容
+        cacheInvalidationService.onDocumentDeleted(documentId);
     }
 
     public List<Document> listDocuments() {
@@ -405,38 +677,10 @@ public class DocumentServiceOptimized {
     }
 
     public BatchUploadProgress getBatchUploadProgress(String taskId) {
-        try {
-
-            Integer completed = (Integer) redisTemplate.opsForValue().get(
-                    CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":completed"
-            );
-            Integer failed = (Integer) redisTemplate.opsForValue().get(
-                    CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":failed"
-            );
-            Integer total = (Integer) redisTemplate.opsForValue().get(
-                    CacheConstants.DOCUMENT_UPLOAD_PROGRESS_PREFIX + taskId + ":total"
-            );
-
-            if (completed == null && failed == null && total == null) {
-                log.warn("[未找到批量上传任务进度: {}]", taskId);
-                return null;
-            }
-
-            if (completed == null) completed = 0;
-            if (failed == null) failed = 0;
-            if (total == null) total = 0;
-
-            return BatchUploadProgress.builder()
-                .taskId(taskId)
-                .totalDocuments(total)
-                .completedDocuments(completed)
-                .failedDocuments(failed)
-                .progress(total > 0 ? (double) (completed + failed) / total * 100 : 0)
-                .status(total > 0 && (completed + failed) >= total ? "COMPLETED" : "PROCESSING")
-                .build();
-        } catch (Exception e) {
-            log.error("[获取批量上传进度失败]", e);
-            return null;
+        BatchUploadProgress progress = ingestionJobService.getProgress(taskId);
+        if (progress == null) {
+            log.warn("[未找到批量上传任务进度: {}]", taskId);
         }
+        return progress;
     }
 }
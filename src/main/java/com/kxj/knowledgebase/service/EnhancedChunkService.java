@@ -3,7 +3,7 @@ package com.kxj.knowledgebase.service;
 import com.kxj.knowledgebase.dto.ChunkMetadata;
 import com.kxj.knowledgebase.entity.Document;
 import com.kxj.knowledgebase.entity.DocumentChunk;
-import com.kxj.knowledgebase.service.embedding.EmbeddingService;
+import com.kxj.knowledgebase.service.embedding.BatchEmbeddingService;
 import com.kxj.knowledgebase.service.parser.ParseResult;
 import com.kxj.knowledgebase.util.StringUtils;
 import lombok.RequiredArgsConstructor;
@@ -24,7 +24,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class EnhancedChunkService {
 
-    private final EmbeddingService embeddingService;
+    private final BatchEmbeddingService batchEmbeddingService;
 
     /**
      * 从解析结果创建增强的 chunks
@@ -92,6 +92,13 @@ public class EnhancedChunkService {
             prevChunk = chunk;
         }
 
+        // 统一批量向量化（经内容哈希缓存与向量存储，重复文本不再调用模型）
+        List<float[]> embeddings = batchEmbeddingService.embedAll(
+                chunks.stream().map(DocumentChunk::getContent).toList());
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).setEmbedding(StringUtils.floatArrayToString(embeddings.get(i)));
+        }
+
         return chunks;
     }
 
@@ -284,14 +291,11 @@ public class EnhancedChunkService {
             DocumentChunk prevChunk) {
 
         String content = segment.text();
-        float[] embedding = embeddingService.embed(content);
-        String embeddingString = StringUtils.floatArrayToString(embedding);
 
         DocumentChunk chunk = DocumentChunk.builder()
                 .documentId(document.getId())
                 .chunkIndex(metadata.getChunkIndex())
                 .content(content)
-                .embedding(embeddingString)
                 .createTime(LocalDateTime.now())
                 .metadata(metadata.toJson())
                 .tokenCount(metadata.getTokenCount())
@@ -3,7 +3,8 @@ package com.kxj.knowledgebase.service;
 import com.kxj.knowledgebase.dto.ChunkMetadata;
 import com.kxj.knowledgebase.entity.Document;
 import com.kxj.knowledgebase.entity.DocumentChunk;
-import com.kxj.knowledgebase.service.embedding.EmbeddingService;
+import com.kxj.knowledgebase.service.embedding.BatchEmbeddingService;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
 import com.kxj.knowledgebase.service.parser.ParseResult;
 import com.kxj.knowledgebase.util.StringUtils;
 import lombok.RequiredArgsConstructor;
@@ -25,7 +26,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class HierarchicalChunkService {
 
-    private final EmbeddingService embeddingService;
+    private final BatchEmbeddingService batchEmbeddingService;
+    private final RagMetrics ragMetrics;
 
     // 父块目标大小（字符数）
     private static final int PARENT_CHUNK_SIZE = 2000;
@@ -35,11 +37,11 @@ public class HierarchicalChunkService {
     private static final double CHILD_OVERLAP_RATIO = 0.2;
 
     /**
-     * 创建分层 chunks：父块 + 子块
+     * 创建分层 chunks：父块 + 子块（子块尚未向量化，见 {@link #embedChildChunks}）
      *
      * @param parseResult 文档解析结果
      * @param document    文档实体
-     * @return 所有 chunks（父块在前，子块在后）
+     * @return 所有 chunks（每个父块后紧跟其子块）
      */
     public List<DocumentChunk> createHierarchicalChunks(
             ParseResult parseResult,
@@ -57,12 +59,13 @@ public class HierarchicalChunkService {
                 : document.getFileName();
 
         log.info("[开始分层切分文档: {}, documentId={}]", document.getFileName(), document.getId());
+        long chunkStart = System.nanoTime();
 
         // 1. 创建父块（按文档结构）
         List<ParentSegment> parentSegments = createParentSegments(pages, fullText);
         log.info("[创建 {} 个父块]", parentSegments.size());
 
-        // 2. 为每个父块创建子块
+        // 2. 为每个父块创建子块（此时尚未向量化）
         List<DocumentChunk> allChunks = new ArrayList<>();
         int parentIndex = 0;
         int childGlobalIndex = 0;
@@ -94,6 +97,8 @@ public class HierarchicalChunkService {
             log.debug("[父块 {} 创建 {} 个子块]", parentIndex, childChunks.size());
         }
 
+        ragMetrics.ingestionStage("chunk", chunkStart);
+
         // 验证所有 chunks 的 document_id
         long distinctDocIds = allChunks.stream().map(DocumentChunk::getDocumentId).distinct().count();
         log.info("[分层切分完成: {} 个父块, {} 个子块, 总计 {} 个chunks, documentId 分布: {} 个不同值]",
@@ -252,8 +257,7 @@ public class HierarchicalChunkService {
         String content = segment.text();
 
         // 父块不向量化（节省存储），只有子块有向量用于检索
-        // embedding 字段在数据库中是 NOT NULL，所以设置为空字符串或特殊标记
-        String emptyEmbedding = StringUtils.floatArrayToString(new float[768]);
+        // embedding 置为 NULL，不进入子块部分 HNSW 索引
 
         ChunkMetadata metadata = ChunkMetadata.builder()
                 .chunkIndex(parentIndex)
@@ -271,7 +275,7 @@ public class HierarchicalChunkService {
                 .documentId(document.getId())
                 .chunkIndex(parentIndex)
                 .content(content)
-                .embedding(emptyEmbedding)  // 父块无有效向量
+                .embedding(null)  // 父块无向量
                 .createTime(LocalDateTime.now())
                 .metadata(metadata.toJson())
                 .tokenCount(metadata.getTokenCount())
@@ -286,6 +290,7 @@ public class HierarchicalChunkService {
                 .contentType(metadata.getContentType())
                 .summary(generateSummary(content))
                 .totalChunks(totalParents)
+                .contentHash(StringUtils.sha256Hex(content))
                 .build();
     }
 
@@ -311,9 +316,6 @@ public class HierarchicalChunkService {
         for (String childText : childTexts) {
             int globalIndex = startChildIndex + childLocalIndex;
 
-            float[] embedding = embeddingService.embed(childText);
-            String embeddingString = StringUtils.floatArrayToString(embedding);
-
             ChunkMetadata metadata = ChunkMetadata.builder()
                     .chunkIndex(globalIndex)
                     .totalChunks(-1) // 子块总数在父块中记录
@@ -330,7 +332,6 @@ public class HierarchicalChunkService {
                     .documentId(document.getId())
                     .chunkIndex(globalIndex)
                     .content(childText)
-                    .embedding(embeddingString)
                     .createTime(LocalDateTime.now())
                     .metadata(metadata.toJson())
                     .tokenCount(metadata.getTokenCount())
@@ -344,6 +345,7 @@ public class HierarchicalChunkService {
                     .headingsPath(parentChunk.getHeadingsPath())
                     .contentType(metadata.getContentType())
                     .summary(generateSummary(childText))
+                    .contentHash(StringUtils.sha256Hex(childText))
                     .build();
 
             childChunks.add(childChunk);
@@ -353,10 +355,37 @@ public class HierarchicalChunkService {
         return childChunks;
     }
 
+    /**
+     * 批量向量化子块：按微批并发调用 embedAll，替代逐条 embed
+     * 增量入库时只传入新增/变化的 chunk，未变化的子块沿用库中已有向量
+     *
+     * @param chunks 待向量化的 chunks（父块会被忽略）
+     */
+    public void embedChildChunks(List<DocumentChunk> chunks) {
+        List<DocumentChunk> children = chunks.stream()
+                .filter(c -> c.getChunkLevel() == 1)
+                .toList();
+        if (children.isEmpty()) {
+            return;
+        }
+
+        long embedStart = System.nanoTime();
+
+        List<String> texts = children.stream()
+                .map(DocumentChunk::getContent)
+                .toList();
+        List<float[]> embeddings = batchEmbeddingService.embedAll(texts);
+
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).setEmbedding(StringUtils.floatArrayToString(embeddings.get(i)));
+        }
+        ragMetrics.ingestionStage("embed", embedStart);
+    }
+
     /**
      * 切分子块（句子边界 + 重叠）
      */
-    private List<String> splitIntoChildChunks(String text, int chunkSize, double overlapRatio) {
+    List<String> splitIntoChildChunks(String text, int chunkSize, double overlapRatio) {
         List<String> chunks = new ArrayList<>();
         List<String> sentences = splitIntoSentences(text);
 
@@ -4,9 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 /**
  * 缓存失效服务
  * 当文档发生变更时，负责清除相关的缓存，确保数据一致性
+ * <p>
+ * 只失效受影响的问答，不再整体清空：
+ * - 删除文档：失效依赖该文档生成的答案
+ * - 上传文档：失效问题与新内容语义相近的答案
+ * - 更新文档：两者都做（旧内容可能已被移除，新内容可能给出更好答案）
  */
 @Slf4j
 @Service
@@ -14,29 +21,53 @@ import org.springframework.stereotype.Service;
 public class CacheInvalidationService {
 
     private final SemanticCacheService semanticCacheService;
+    private final ParentChunkCacheService parentChunkCacheService;
+
+    /**
+     * 文档上传后调用：失效与新内容语义相近的问答缓存
+     * 原因：新文档可能包含这些问题的更好答案
+     *
+     * @param documentId        新文档ID
+     * @param contentEmbeddings 新文档子块向量
+     */
+    public void onDocumentUploaded(Long documentId, List<float[]> contentEmbeddings) {
+        log.info("[文档上传完成，失效相关问答缓存] documentId={}", documentId);
+        try {
+            semanticCacheService.invalidateSimilarTo(contentEmbeddings);
+        } catch (Exception e) {
+            log.error("[问答缓存失效失败] documentId={}", documentId, e);
+        }
+    }
 
     /**
-     * 文档上传后调用：清除所有问答缓存
-     * 原因：新文档可能包含已有问题的答案，旧缓存可能过时
+     * 文档删除后调用：失效依赖该文档的问答缓存及该文档的父块缓存
      */
-    public void onDocumentUploaded() {
-        log.info("[文档上传完成，清除问答缓存]");
-        semanticCacheService.invalidateAll();
+    public void onDocumentDeleted(Long documentId) {
+        log.info("[文档删除完成，失效相关问答缓存] documentId={}", documentId);
+        parentChunkCacheService.evictDocument(documentId);
+        semanticCacheService.invalidateByDocument(documentId);
     }
 
     /**
-     * 文档删除后调用：清除所有问答缓存
+     * 文档新版本增量入库后调用：失效依赖旧版本的问答及父块缓存，并按新增内容失效相近问答
+     *
+     * @param documentId        文档ID
+     * @param addedEmbeddings   新增/变化子块的向量
      */
-    public void onDocumentDeleted() {
-        log.info("[文档删除完成，清除问答缓存]");
-        semanticCacheService.invalidateAll();
+    public void onDocumentUpdated(Long documentId, List<float[]> addedEmbeddings) {
+        log.info("[文档更新完成，失效相关问答缓存] documentId={}", documentId);
+        parentChunkCacheService.evictDocument(documentId);
+        semanticCacheService.invalidateByDocument(documentId);
+        if (!addedEmbeddings.isEmpty()) {
+            onDocumentUploaded(documentId, addedEmbeddings);
+        }
     }
 
     /**
      * 批量文档处理后调用
+     * 每个文档完成时已按内容失效，这里只做记录
      */
     public void onBatchProcessingCompleted() {
-        log.info("[批量文档处理完成，清除问答缓存]");
-        semanticCacheService.invalidateAll();
+        log.info("[批量文档处理完成，相关问答缓存已按文档失效]");
     }
 }
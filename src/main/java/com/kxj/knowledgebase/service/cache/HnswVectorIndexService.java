@@ -1,20 +1,48 @@
 package com.kxj.knowledgebase.service.cache;
 
-import com.github.jelmerk.knn.DistanceFunctions;
 import com.github.jelmerk.knn.Item;
 import com.github.jelmerk.knn.SearchResult;
 import com.github.jelmerk.knn.hnsw.HnswIndex;
 import com.kxj.knowledgebase.config.CacheProperties;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import com.kxj.knowledgebase.util.UnitVectorDistance;
+import com.kxj.knowledgebase.util.VectorCodec;
+import com.kxj.knowledgebase.util.VectorMath;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * HNSW (Hierarchical Navigable Small World) 向量索引服务
@@ -22,14 +50,24 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>使用 hnswlib-core 库实现高效的近似最近邻搜索 (ANN)。
  * 相比暴力扫描 O(N)，HNSW 的查询复杂度为 O(log N)，适合大规模向量检索。
  *
- * <p>性能对比（768维向量）：
+ * <p>性能对比（768维向量，暴力扫描 vs HNSW 搜索，1k/10k/100k 条目）由 {@code HnswSearchBenchmark} 给出，
+ * 使用合成向量离线运行，结果随硬件变化：
  * <pre>
- * 条目数    暴力扫描    HNSW搜索    加速比
- * 100      3ms        0.4ms       8x
- * 1,000    28ms       0.5ms       56x
- * 10,000   285ms      0.7ms       400x
+ * mvn -Pjmh compile exec:exec -Djmh.args="HnswSearchBenchmark"
  * </pre>
  *
+ * <p>入索引和查询的向量都先归一化，距离计算为一次（SIMD）点积，见 {@link UnitVectorDistance}。
+ *
+ * <p>持久化与预热：索引和答案定期快照到本地目录（先写临时文件再原子替换），
+ * 启动时优先从快照恢复，再与 Redis 中的 {@code semantic:qa:*} 对账——
+ * 删除已过期/已失效的条目，补齐快照之后新增的条目；没有快照时则完全从 Redis 重建。
+ * 这样滚动重启后 HNSW 路径无需重新积累即可立即生效。
+ *
+ * <p>版本与墓碑：hnswlib 的删除只是打墓碑，被删节点仍占用 {@code MAX_ELEMENTS} 容量；
+ * 以删除版本号删除后，只有版本号不小于它的条目才能再次加入。因此每个条目携带单调递增的版本号，
+ * 墓碑累计到阈值后用存活条目重建索引以回收容量。快照中的被删节点同样占容量，墓碑数随快照一起保存，
+ * 恢复后继续累计；未记录墓碑数的旧快照在恢复时用存活条目重建一次。
+ *
  * @author kxj
  */
 @Slf4j
@@ -38,9 +76,12 @@ import java.util.concurrent.ConcurrentHashMap;
 public class HnswVectorIndexService {
 
     private final CacheProperties cacheProperties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final RagMetrics ragMetrics;
 
-    // HNSW 索引实例
-    private HnswIndex<String, float[], VectorEntry, Float> index;
+    // HNSW 索引实例（重建/清空时整体替换）
+    private volatile HnswIndex<String, float[], VectorEntry, Float> index;
 
     // 线程安全的答案存储（索引中只存引用，答案存在这里）
     private final ConcurrentHashMap<String, String> answerStore = new ConcurrentHashMap<>();
@@ -54,35 +95,91 @@ public class HnswVectorIndexService {
     private static final int EF_SEARCH = 100;                 // 查询时的搜索范围
     private static final int MAX_ELEMENTS = 100000;           // 最大索引条目数
 
+    // 快照文件名
+    private static final String INDEX_FILE = "semantic-hnsw.idx";
+    private static final String ANSWERS_FILE = "semantic-answers.bin";
+
+    // 墓碑（已删除/被覆盖但仍占容量的节点）达到该数量时重建索引
+    private static final int REBUILD_TOMBSTONE_THRESHOLD = MAX_ELEMENTS / 10;
+
+    // 从 Redis 预热时每个 pipeline 读取的条目数
+    private static final int WARMUP_BATCH_SIZE = 500;
+
     private volatile boolean initialized = false;
 
+    // 自上次快照以来索引是否有变更
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    // 条目/删除版本号：取当前时间戳且严格递增，保证删除后重新加入的条目版本号总是更大
+    private final AtomicLong versionClock = new AtomicLong();
+
+    // 自上次重建以来产生的墓碑数
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    // 增删操作持读锁并发执行，快照/清空持写锁，保证快照时索引与答案一致
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private ScheduledExecutorService snapshotScheduler;
+
     @PostConstruct
     public void init() {
         try {
-            // 创建内存中的 HNSW 索引
-            this.index = HnswIndex
-                    .newBuilder(VECTOR_DIMENSION, DistanceFunctions.FLOAT_COSINE_DISTANCE, MAX_ELEMENTS)
-                    .withM(M)
-                    .withEfConstruction(EF_CONSTRUCTION)
-                    .withEf(EF_SEARCH)
-                    .build();
+            boolean restored = restoreSnapshot();
+            if (!restored) {
+                // 创建内存中的 HNSW 索引
+                this.index = newIndex();
+            }
 
             this.initialized = true;
-            log.info("[HNSW 索引初始化成功] dim={}, M={}, efConstruction={}, efSearch={}",
-                    VECTOR_DIMENSION, M, EF_CONSTRUCTION, EF_SEARCH);
+            log.info("[HNSW 索引初始化成功] dim={}, M={}, efConstruction={}, efSearch={}, 快照恢复={}, 当前大小={}",
+                    VECTOR_DIMENSION, M, EF_CONSTRUCTION, EF_SEARCH, restored, index.size());
 
         } catch (Exception e) {
             log.error("[HNSW 索引初始化失败]", e);
             this.initialized = false;
+            return;
+        }
+
+        warmUpFromRedis();
+        // 恢复的墓碑数可能已达到阈值
+        rebuildIfNeeded();
+
+        if (cacheProperties.isHnswSnapshotEnabled()) {
+            long interval = cacheProperties.getHnswSnapshotInterval().toMillis();
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofVirtual().name("hnsw-snapshot").factory());
+            snapshotScheduler.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MILLISECONDS);
         }
     }
 
     @PreDestroy
     public void destroy() {
-        // HnswIndex 无需显式关闭
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        // 关闭前写入最终快照，供下次启动恢复
+        snapshot();
         log.info("[HNSW 索引已关闭]");
     }
 
+    /**
+     * 仅创建空的内存索引（不恢复快照、不从 Redis 预热、不启动定时快照），用于基准测试
+     */
+    void initInMemory() {
+        this.index = newIndex();
+        this.initialized = true;
+    }
+
+    private HnswIndex<String, float[], VectorEntry, Float> newIndex() {
+        return HnswIndex
+                .newBuilder(VECTOR_DIMENSION, UnitVectorDistance.INSTANCE, MAX_ELEMENTS)
+                .withM(M)
+                .withEfConstruction(EF_CONSTRUCTION)
+                .withEf(EF_SEARCH)
+                .withRemoveEnabled()
+                .build();
+    }
+
     /**
      * 添加向量到索引
      *
@@ -95,19 +192,41 @@ public class HnswVectorIndexService {
             return;
         }
 
+        snapshotLock.readLock().lock();
+        String previousAnswer = null;
+        boolean added = false;
         try {
             // 存储答案
-            answerStore.put(questionHash, answer);
-
-            // 添加到 HNSW 索引
-            VectorEntry entry = new VectorEntry(questionHash, embedding);
-            index.add(entry);
-
-            log.debug("[HNSW 向量已添加] hash={}, 当前索引大小={}", questionHash, index.size());
+            previousAnswer = answerStore.put(questionHash, answer);
+
+            // 添加到 HNSW 索引；覆盖已有条目时旧节点变为墓碑
+            boolean replacing = index.contains(questionHash);
+            VectorEntry entry = new VectorEntry(questionHash, VectorMath.normalize(embedding), nextVersion());
+            added = index.add(entry);
+            if (added) {
+                if (replacing) {
+                    tombstones.incrementAndGet();
+                }
+                dirty.set(true);
+                log.debug("[HNSW 向量已添加] hash={}, 当前索引大小={}", questionHash, index.size());
+            } else {
+                log.warn("[HNSW 添加向量被拒绝] hash={}, 已存在更高版本的条目或删除记录", questionHash);
+            }
 
         } catch (Exception e) {
             log.warn("[HNSW 添加向量失败] hash={}: {}", questionHash, e.getMessage());
+        } finally {
+            if (!added) {
+                // 索引未接受该条目，恢复原答案，避免答案与索引不一致
+                if (previousAnswer != null) {
+                    answerStore.put(questionHash, previousAnswer);
+                } else {
+                    answerStore.remove(questionHash, answer);
+                }
+            }
+            snapshotLock.readLock().unlock();
         }
+        rebuildIfNeeded();
     }
 
     /**
@@ -125,9 +244,9 @@ public class HnswVectorIndexService {
 
         try {
             // HNSW 搜索 - 返回距离最近的 topK 个结果
-            // 注意：DistanceFunctions.FLOAT_COSINE_DISTANCE 返回的是余弦距离
             // 余弦距离 = 1 - 余弦相似度，所以距离越小越相似
-            List<SearchResult<VectorEntry, Float>> results = index.findNearest(queryEmbedding, topK);
+            List<SearchResult<VectorEntry, Float>> results =
+                    index.findNearest(VectorMath.normalize(queryEmbedding), topK);
 
             if (results.isEmpty()) {
                 return null;
@@ -137,6 +256,7 @@ public class HnswVectorIndexService {
             SearchResult<VectorEntry, Float> bestResult = results.get(0);
             double distance = bestResult.distance();  // 余弦距离 [0, 2]
             double similarity = 1.0 - distance;       // 转换为相似度 [1, -1]
+            ragMetrics.semanticCacheSimilarity("hnsw", similarity);
 
             log.debug("[HNSW 搜索结果] 最相似距离={}, 相似度={}",
                     String.format("%.4f", distance), String.format("%.4f", similarity));
@@ -168,7 +288,7 @@ public class HnswVectorIndexService {
             return List.of();
         }
 
-        List<SearchResult<VectorEntry, Float>> results = index.findNearest(queryEmbedding, topK);
+        List<SearchResult<VectorEntry, Float>> results = index.findNearest(VectorMath.normalize(queryEmbedding), topK);
 
         return results.stream()
                 .map(r -> ScoredResult.builder()
@@ -187,15 +307,56 @@ public class HnswVectorIndexService {
             return;
         }
 
+        snapshotLock.readLock().lock();
         try {
-            index.remove(questionHash, System.currentTimeMillis());
+            if (index.remove(questionHash, nextVersion())) {
+                tombstones.incrementAndGet();
+            }
             answerStore.remove(questionHash);
+            dirty.set(true);
             log.debug("[HNSW 向量已删除] hash={}", questionHash);
         } catch (Exception e) {
             log.warn("[HNSW 删除向量失败] hash={}", questionHash);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        rebuildIfNeeded();
+    }
+
+    /**
+     * 墓碑达到阈值时用存活条目重建索引，回收被删除节点占用的容量
+     */
+    private void rebuildIfNeeded() {
+        if (tombstones.get() < REBUILD_TOMBSTONE_THRESHOLD) {
+            return;
+        }
+
+        snapshotLock.writeLock().lock();
+        try {
+            int removed = tombstones.get();
+            if (removed < REBUILD_TOMBSTONE_THRESHOLD) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            HnswIndex<String, float[], VectorEntry, Float> rebuilt = newIndex();
+            rebuilt.addAll(List.copyOf(index.items()));
+            this.index = rebuilt;
+            tombstones.set(0);
+            dirty.set(true);
+            log.info("[HNSW 索引已重建] 回收墓碑={}, 当前大小={}, 耗时{}ms",
+                    removed, rebuilt.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.warn("[HNSW 索引重建失败] {}", e.getMessage());
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
     }
 
+    private long nextVersion() {
+        long now = System.currentTimeMillis();
+        return versionClock.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
     /**
      * 清空所有索引
      */
@@ -204,22 +365,179 @@ public class HnswVectorIndexService {
             return;
         }
 
+        snapshotLock.writeLock().lock();
         try {
             // 重建索引（清空所有数据）
-            this.index = HnswIndex
-                    .newBuilder(VECTOR_DIMENSION, DistanceFunctions.FLOAT_COSINE_DISTANCE, MAX_ELEMENTS)
-                    .withM(M)
-                    .withEfConstruction(EF_CONSTRUCTION)
-                    .withEf(EF_SEARCH)
-                    .build();
+            this.index = newIndex();
 
             answerStore.clear();
+            tombstones.set(0);
+            dirty.set(true);
             log.info("[HNSW 索引已清空]");
         } catch (Exception e) {
             log.error("[HNSW 清空索引失败]", e);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    // ═════════════════════════════════════════════════════════════════
+    // 快照与预热
+    // ═════════════════════════════════════════════════════════════════
+
+    /**
+     * 将索引与答案写入本地快照（无变更时跳过）
+     */
+    public void snapshot() {
+        if (!initialized || !cacheProperties.isHnswSnapshotEnabled() || !dirty.getAndSet(false)) {
+            return;
+        }
+
+        Path dir = Path.of(cacheProperties.getHnswSnapshotDir());
+        Path indexTmp = dir.resolve(INDEX_FILE + ".tmp");
+        Path answersTmp = dir.resolve(ANSWERS_FILE + ".tmp");
+
+        long startTime = System.currentTimeMillis();
+        snapshotLock.writeLock().lock();
+        try {
+            Files.createDirectories(dir);
+            index.save(indexTmp);
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(answersTmp)))) {
+                out.writeObject(new HashMap<>(answerStore));
+                out.writeInt(tombstones.get());
+            }
+            Files.move(indexTmp, dir.resolve(INDEX_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(answersTmp, dir.resolve(ANSWERS_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.info("[HNSW 快照已保存] 条目数={}, 耗时{}ms", index.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            dirty.set(true);
+            log.warn("[HNSW 快照保存失败] {}", e.getMessage());
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
     }
 
+    /**
+     * 从本地快照恢复索引与答案
+     *
+     * @return 是否成功恢复
+     */
+    @SuppressWarnings("unchecked")
+    private boolean restoreSnapshot() {
+        if (!cacheProperties.isHnswSnapshotEnabled()) {
+            return false;
+        }
+
+        Path dir = Path.of(cacheProperties.getHnswSnapshotDir());
+        Path indexFile = dir.resolve(INDEX_FILE);
+        Path answersFile = dir.resolve(ANSWERS_FILE);
+        if (!Files.exists(indexFile) || !Files.exists(answersFile)) {
+            return false;
+        }
+
+        try {
+            HnswIndex<String, float[], VectorEntry, Float> loaded = HnswIndex.load(indexFile);
+            Map<String, String> answers;
+            int restoredTombstones;
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(Files.newInputStream(answersFile)))) {
+                answers = (Map<String, String>) in.readObject();
+                restoredTombstones = readTombstones(in);
+            }
+
+            if (restoredTombstones < 0) {
+                // 旧快照未记录墓碑数，无法得知被删节点占用的容量，用存活条目重建一次
+                HnswIndex<String, float[], VectorEntry, Float> rebuilt = newIndex();
+                rebuilt.addAll(List.copyOf(loaded.items()));
+                loaded = rebuilt;
+                restoredTombstones = 0;
+                dirty.set(true);
+                log.info("[HNSW 旧格式快照已按存活条目重建] 当前大小={}", loaded.size());
+            }
+
+            this.index = loaded;
+            tombstones.set(restoredTombstones);
+            answerStore.putAll(answers);
+            return true;
+        } catch (Exception e) {
+            log.warn("[HNSW 快照恢复失败，将从 Redis 重建] {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 读取快照中的墓碑数，旧格式快照没有该字段时返回 -1
+     */
+    private static int readTombstones(ObjectInputStream in) throws IOException {
+        try {
+            return in.readInt();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 与 Redis 中的语义缓存对账：移除已失效条目，补齐缺失条目
+     */
+    private void warmUpFromRedis() {
+        try {
+            long startTime = System.currentTimeMillis();
+            Set<String> liveHashes = redisTemplate.opsForSet().members(SemanticCacheService.QUESTION_INDEX_KEY);
+            if (liveHashes == null) {
+                liveHashes = Set.of();
+            }
+
+            int pruned = 0;
+            for (VectorEntry entry : List.copyOf(index.items())) {
+                if (!liveHashes.contains(entry.id())) {
+                    remove(entry.id());
+                    pruned++;
+                }
+            }
+
+            List<String> missing = liveHashes.stream()
+                    .filter(hash -> !index.contains(hash) || !answerStore.containsKey(hash))
+                    .toList();
+            int loaded = 0;
+            for (int from = 0; from < missing.size(); from += WARMUP_BATCH_SIZE) {
+                loaded += loadFromRedis(missing.subList(from, Math.min(from + WARMUP_BATCH_SIZE, missing.size())));
+            }
+
+            log.info("[HNSW Redis 对账完成] 移除={}, 补充={}, 当前大小={}, 耗时{}ms",
+                    pruned, loaded, index.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.warn("[HNSW Redis 对账失败，使用现有索引] {}", e.getMessage());
+        }
+    }
+
+    private int loadFromRedis(List<String> hashes) {
+        byte[] embeddingField = "embedding".getBytes(StandardCharsets.UTF_8);
+        byte[] answerField = "answer".getBytes(StandardCharsets.UTF_8);
+        List<Object> results = binaryRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String hash : hashes) {
+                byte[] key = (SemanticCacheService.SEMANTIC_CACHE_PREFIX + hash).getBytes(StandardCharsets.UTF_8);
+                connection.hashCommands().hMGet(key, embeddingField, answerField);
+            }
+            return null;
+        });
+
+        int loaded = 0;
+        for (int i = 0; i < hashes.size(); i++) {
+            if (!(results.get(i) instanceof List<?> values) || values.size() < 2
+                    || !(values.get(0) instanceof byte[] embedding)
+                    || !(values.get(1) instanceof byte[] answer)) {
+                continue;
+            }
+            add(hashes.get(i), VectorCodec.decode(embedding), new String(answer, StandardCharsets.UTF_8));
+            loaded++;
+        }
+        return loaded;
+    }
+
     /**
      * 检查索引是否可用
      */
@@ -242,6 +560,7 @@ public class HnswVectorIndexService {
                 .initialized(initialized)
                 .indexSize(size())
                 .answerStoreSize(answerStore.size())
+                .tombstoneCount(tombstones.get())
                 .build();
     }
 
@@ -251,15 +570,22 @@ public class HnswVectorIndexService {
 
     /**
      * HNSW 索引条目（必须实现 Item 接口）
-     * <p>Item<TId, TVector> 需要两个类型参数：ID类型和向量类型
+     * <p>Item<TId, TVector> 需要两个类型参数：ID类型和向量类型。
+     * 版本号用于 hnswlib 的增删冲突判断：版本号低于已有条目或删除记录的 add 会被拒绝；
+     * 旧快照中的条目反序列化后版本号为 0
      */
     public static class VectorEntry implements Item<String, float[]> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
         private final String id;
         private final float[] vector;
+        private final long version;
 
-        public VectorEntry(String id, float[] vector) {
+        public VectorEntry(String id, float[] vector, long version) {
             this.id = id;
             this.vector = vector;
+            this.version = version;
         }
 
         @Override
@@ -272,6 +598,11 @@ public class HnswVectorIndexService {
             return vector;
         }
 
+        @Override
+        public long version() {
+            return version;
+        }
+
         @Override
         public int dimensions() {
             return vector != null ? vector.length : 0;
@@ -292,5 +623,6 @@ public class HnswVectorIndexService {
         private boolean initialized;
         private int indexSize;
         private int answerStoreSize;
+        private int tombstoneCount;
     }
 }
@@ -0,0 +1,98 @@
+package com.kxj.knowledgebase.service.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.repository.DocumentChunkRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 父块本地缓存
+ * <p>
+ * 父块入库后不再变化且被反复检索，按 chunkId 缓存检索所需的字段（不含向量），
+ * 未命中的父块通过一次 findAllById 批量加载；文档删除时按 documentId 失效。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParentChunkCacheService {
+
+    private final DocumentChunkRepository chunkRepository;
+    private final RetrievalProperties retrievalProperties;
+
+    private LoadingCache<Long, ParentBlock> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(retrievalProperties.getParentCacheMaxSize())
+                .expireAfterAccess(retrievalProperties.getParentCacheExpireAfterAccess())
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public ParentBlock load(Long id) {
+                        return chunkRepository.findById(id).map(ParentBlock::from).orElse(null);
+                    }
+
+                    @Override
+                    public Map<Long, ParentBlock> loadAll(Set<? extends Long> ids) {
+                        return loadFromDatabase(ids);
+                    }
+                });
+    }
+
+    /**
+     * 批量获取父块（未命中部分一次查询加载）
+     *
+     * @param ids 父块ID
+     * @return 父块ID -> 父块，不存在的ID不包含在结果中
+     */
+    public Map<Long, ParentBlock> getAll(Collection<Long> ids) {
+        return cache.getAll(ids);
+    }
+
+    /**
+     * 失效指定文档的所有父块
+     */
+    public void evictDocument(Long documentId) {
+        cache.asMap().values().removeIf(block -> documentId.equals(block.documentId()));
+        log.debug("[父块缓存已失效] documentId={}", documentId);
+    }
+
+    private Map<Long, ParentBlock> loadFromDatabase(Set<? extends Long> ids) {
+        long startTime = System.currentTimeMillis();
+        Map<Long, ParentBlock> loaded = chunkRepository.findAllById(Set.copyOf(ids))
+                .stream()
+                .collect(Collectors.toMap(DocumentChunk::getId, ParentBlock::from, (a, b) -> a));
+        log.debug("[父块批量加载] 请求={}, 命中数据库={}, 耗时{}ms",
+                ids.size(), loaded.size(), System.currentTimeMillis() - startTime);
+        return loaded;
+    }
+
+    /**
+     * 检索所需的父块字段
+     */
+    public record ParentBlock(
+            Long id,
+            Long documentId,
+            String content,
+            String sectionTitle,
+            String pageRange,
+            String headingsPath
+    ) {
+        static ParentBlock from(DocumentChunk chunk) {
+            return new ParentBlock(chunk.getId(), chunk.getDocumentId(), chunk.getContent(),
+                    chunk.getSectionTitle(), chunk.getPageRange(), chunk.getHeadingsPath());
+        }
+    }
+}
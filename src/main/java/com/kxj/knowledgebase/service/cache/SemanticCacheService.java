@@ -3,22 +3,34 @@ package com.kxj.knowledgebase.service.cache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kxj.knowledgebase.config.CacheProperties;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import com.kxj.knowledgebase.util.SingleFlight;
+import com.kxj.knowledgebase.util.VectorCodec;
+import com.kxj.knowledgebase.util.VectorMath;
 import jakarta.annotation.PostConstruct;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -33,20 +45,36 @@ import java.util.stream.Collectors;
 public class SemanticCacheService {
 
     private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;  // 向量以二进制写入 Hash
     private final CacheProperties cacheProperties;
     private final SynonymNormalizer synonymNormalizer;
     private final HnswVectorIndexService hnswIndex;  // HNSW 向量索引（可选优化）
+    private final RagMetrics ragMetrics;
 
     // 本地缓存：问题 -> 答案（用于精确匹配加速）
     private Cache<String, CacheEntry> localSemanticCache;
 
+    // 本地缓存：问题哈希 -> 已解码的候选向量（避免暴力扫描时重复读取和解码）
+    private Cache<String, float[]> candidateVectors;
+
+    // 相同（标准化后）问题的并发生成合并
+    private final SingleFlight<String, String> generationFlight = new SingleFlight<>();
+
     // HNSW 启用阈值（缓存条目超过此值时启用 HNSW）
     private static final int HNSW_ENABLE_THRESHOLD = 500;
 
     // 缓存 Key 前缀
-    private static final String SEMANTIC_CACHE_PREFIX = "semantic:qa:";
+    static final String SEMANTIC_CACHE_PREFIX = "semantic:qa:";
     private static final String EXACT_CACHE_PREFIX = "qa:exact:";
-    private static final String QUESTION_INDEX_KEY = "semantic:question:index";
+    static final String QUESTION_INDEX_KEY = "semantic:question:index";
+    // 文档 -> 依赖该文档的问题哈希（用于按文档精确失效）
+    private static final String DOCUMENT_TAG_PREFIX = "semantic:doc:";
+
+    // 批量删除时每次 SCAN / UNLINK 的 key 数
+    private static final int SCAN_BATCH_SIZE = 500;
+
+    // 新内容失效时，每个新子块在 HNSW 中查找的近邻问题数
+    private static final int UPLOAD_INVALIDATION_NEIGHBORS = 10;
 
     @PostConstruct
     public void init() {
@@ -55,6 +83,13 @@ public class SemanticCacheService {
                 .expireAfterWrite(cacheProperties.getLocalExpireAfterWrite())
                 .recordStats()
                 .build();
+
+        candidateVectors = Caffeine.newBuilder()
+                .maximumSize(Math.max(cacheProperties.getLocalMaxSize(), cacheProperties.getMaxCandidateScan()))
+                .expireAfterWrite(cacheProperties.getSemanticTtl())
+                .build();
+
+        log.info("[语义缓存初始化] 向量相似度计算使用{}实现", VectorMath.isSimdEnabled() ? "SIMD" : "标量");
     }
 
     /**
@@ -76,6 +111,7 @@ public class SemanticCacheService {
         CacheEntry localEntry = localSemanticCache.getIfPresent(questionHash);
         if (localEntry != null) {
             log.info("[语义缓存 L1命中-精确] 问题: {}", truncate(question, 30));
+            ragMetrics.semanticCacheLookup("l1");
             return localEntry.getAnswer();
         }
 
@@ -89,6 +125,7 @@ public class SemanticCacheService {
                     .answer(exactAnswer)
                     .build());
             log.info("[语义缓存 L2命中-精确] 问题: {}", truncate(question, 30));
+            ragMetrics.semanticCacheLookup("l2");
             return exactAnswer;
         }
 
@@ -101,36 +138,39 @@ public class SemanticCacheService {
         }
 
         log.debug("[语义缓存 未命中] 问题: {}", truncate(question, 30));
+        ragMetrics.semanticCacheLookup("miss");
         return null;
     }
 
     /**
      * 存入缓存
      *
-     * @param question  原始问题
-     * @param embedding 问题 embedding
-     * @param answer    答案
+     * @param question    原始问题
+     * @param embedding   问题 embedding
+     * @param answer      答案
+     * @param documentIds 生成答案所依赖的文档ID（文档删除时据此失效）
      */
-    public void put(String question, float[] embedding, String answer) {
+    public void put(String question, float[] embedding, String answer, Set<Long> documentIds) {
         if (!cacheProperties.isEnabled()) {
             return;
         }
 
         String normalizedQuestion = normalizeQuestion(question);
         String questionHash = sha256(normalizedQuestion);
-        String embeddingStr = formatEmbedding(embedding);
+        // 写入前归一化，相似度扫描时只需一次点积
+        embedding = VectorMath.normalize(embedding);
 
-        // 存储语义缓存（带 embedding）
+        // 存储语义缓存（带 embedding，向量按 VectorCodec 二进制编码）
         String semanticKey = SEMANTIC_CACHE_PREFIX + questionHash;
-        Map<String, String> semanticData = Map.of(
-                "question", normalizedQuestion,
-                "embedding", embeddingStr,
-                "answer", answer,
-                "timestamp", String.valueOf(System.currentTimeMillis()),
-                "hitCount", "0"
+        Map<String, byte[]> semanticData = Map.of(
+                "question", utf8(normalizedQuestion),
+                "embedding", VectorCodec.encode(embedding, cacheProperties.getVectorEncoding()),
+                "answer", utf8(answer),
+                "timestamp", utf8(String.valueOf(System.currentTimeMillis())),
+                "hitCount", utf8("0")
         );
-        redisTemplate.opsForHash().putAll(semanticKey, semanticData);
-        redisTemplate.expire(semanticKey, cacheProperties.getSemanticTtl());
+        binaryRedisTemplate.opsForHash().putAll(semanticKey, semanticData);
+        binaryRedisTemplate.expire(semanticKey, cacheProperties.getSemanticTtl());
 
         // 存储精确匹配缓存（仅答案，用于快速查找）
         String exactKey = EXACT_CACHE_PREFIX + questionHash;
@@ -138,6 +178,14 @@ public class SemanticCacheService {
 
         // 添加到问题索引（用于后续相似度扫描）
         redisTemplate.opsForSet().add(QUESTION_INDEX_KEY, questionHash);
+        candidateVectors.put(questionHash, embedding);
+
+        // 记录答案依赖的文档
+        for (Long documentId : documentIds) {
+            String tagKey = DOCUMENT_TAG_PREFIX + documentId;
+            redisTemplate.opsForSet().add(tagKey, questionHash);
+            redisTemplate.expire(tagKey, cacheProperties.getSemanticTtl());
+        }
 
         // 添加到 HNSW 索引（如果启用）
         hnswIndex.add(questionHash, embedding, answer);
@@ -152,6 +200,18 @@ public class SemanticCacheService {
         log.info("[语义缓存 已存储] 问题: {}", truncate(question, 30));
     }
 
+    /**
+     * 合并并发的相同问题生成：标准化后相同的问题同时只调用一次大模型，其余调用方共享答案
+     *
+     * @param question  原始问题
+     * @param generator 答案生成函数
+     * @return 生成的答案
+     */
+    public String generateOnce(String question, Supplier<String> generator) {
+        String questionHash = sha256(normalizeQuestion(question));
+        return generationFlight.execute(questionHash, generator);
+    }
+
     /**
      * 使用 HNSW 索引或暴力扫描查找相似向量
      *
@@ -166,6 +226,7 @@ public class SemanticCacheService {
             String result = hnswIndex.search(queryEmbedding, 1, cacheProperties.getSimilarityThreshold());
             if (result != null) {
                 log.debug("[HNSW 索引命中]");
+                ragMetrics.semanticCacheLookup("l3_hnsw");
                 return result;
             }
         }
@@ -186,12 +247,13 @@ public class SemanticCacheService {
     }
 
     /**
-     * 基于向量相似度暴力扫描查找缓存（O(N) 复杂度）
+     * 基于向量相似度暴力扫描查找缓存（O(N) 计算，常数次网络往返）
      *
      * 策略：
-     * 1. 获取最近缓存的 N 个问题
-     * 2. 计算当前问题与候选问题的 embedding 余弦相似度
-     * 3. 超过阈值则视为命中
+     * 1. SMEMBERS 获取候选问题（1 次往返）
+     * 2. 本地未缓存的候选向量通过一次 pipeline 批量 HGET（1 次往返）
+     * 3. 计算余弦相似度，仅对超过阈值的最佳候选读取答案（1 次往返）
+     * 4. 已过期的候选批量从索引中移除
      */
     private String findBySimilarityBruteForce(float[] queryEmbedding, String excludeHash) {
         // 获取候选问题（从 Redis Set 中读取）
@@ -206,68 +268,236 @@ public class SemanticCacheService {
                 .limit(cacheProperties.getMaxCandidateScan())
                 .toList();
 
-        double bestSimilarity = 0;
-        String bestAnswer = null;
-        String bestHash = null;
+        Map<String, float[]> vectors = loadCandidateVectors(candidates);
 
-        for (String hash : candidates) {
-            String semanticKey = SEMANTIC_CACHE_PREFIX + hash;
-            Map<Object, Object> data = redisTemplate.opsForHash().entries(semanticKey);
+        SimilarityRanking ranking = rankBySimilarity(queryEmbedding, vectors, cacheProperties.getSimilarityThreshold());
+        if (!vectors.isEmpty()) {
+            ragMetrics.semanticCacheSimilarity("scan", ranking.bestSimilarity());
+        }
+        List<Map.Entry<String, Double>> matches = ranking.matches();
+        if (matches.isEmpty()) {
+            return null;
+        }
 
-            if (data.isEmpty()) {
-                // 缓存已过期，从索引中移除
-                redisTemplate.opsForSet().remove(QUESTION_INDEX_KEY, hash);
+        // 按相似度从高到低读取答案，通常第一个即命中；答案缺失说明条目刚过期
+        for (Map.Entry<String, Double> match : matches) {
+            String semanticKey = SEMANTIC_CACHE_PREFIX + match.getKey();
+            byte[] answerBytes = binaryRedisTemplate.<String, byte[]>opsForHash().get(semanticKey, "answer");
+            if (answerBytes == null) {
+                candidateVectors.invalidate(match.getKey());
+                redisTemplate.opsForSet().remove(QUESTION_INDEX_KEY, match.getKey());
                 continue;
             }
 
-            String storedEmbedding = (String) data.get("embedding");
-            if (storedEmbedding == null) continue;
+            // 更新命中次数统计
+            redisTemplate.opsForHash().increment(semanticKey, "hitCount", 1);
+            log.info("[语义相似度匹配] 相似度={}", String.format("%.4f", match.getValue()));
+            ragMetrics.semanticCacheLookup("l3_scan");
+            return new String(answerBytes, StandardCharsets.UTF_8);
+        }
 
-            float[] candidateEmbedding = parseEmbedding(storedEmbedding);
-            double similarity = cosineSimilarity(queryEmbedding, candidateEmbedding);
+        return null;
+    }
 
-            if (similarity > bestSimilarity) {
-                bestSimilarity = similarity;
-                bestAnswer = (String) data.get("answer");
-                bestHash = hash;
+    /**
+     * 计算查询向量与全部候选的相似度，返回超过阈值的候选（按相似度降序）及最高相似度
+     * 候选向量须已归一化，查询向量在此归一化一次，每个候选只计算一次点积
+     */
+    static SimilarityRanking rankBySimilarity(float[] queryEmbedding, Map<String, float[]> vectors, double threshold) {
+        float[] query = VectorMath.normalize(queryEmbedding);
+        List<Map.Entry<String, Double>> matches = new ArrayList<>();
+        double best = -1;
+        for (Map.Entry<String, float[]> entry : vectors.entrySet()) {
+            double similarity = VectorMath.dot(query, entry.getValue());
+            best = Math.max(best, similarity);
+            if (similarity >= threshold) {
+                matches.add(Map.entry(entry.getKey(), similarity));
             }
         }
+        matches.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        return new SimilarityRanking(matches, best);
+    }
 
-        // 判断是否超过阈值
-        if (bestSimilarity >= cacheProperties.getSimilarityThreshold()) {
-            // 更新命中次数统计
-            if (bestHash != null) {
-                String semanticKey = SEMANTIC_CACHE_PREFIX + bestHash;
-                redisTemplate.opsForHash().increment(semanticKey, "hitCount", 1);
+    /**
+     * 暴力扫描结果：超过阈值的候选（降序）+ 全部候选中的最高相似度
+     */
+    record SimilarityRanking(List<Map.Entry<String, Double>> matches, double bestSimilarity) {
+    }
+
+    /**
+     * 加载候选向量：优先使用本地已解码的副本，其余通过一次 pipeline 批量读取
+     */
+    private Map<String, float[]> loadCandidateVectors(List<String> candidates) {
+        Map<String, float[]> vectors = new LinkedHashMap<>(candidateVectors.getAllPresent(candidates));
+
+        List<String> missing = candidates.stream()
+                .filter(h -> !vectors.containsKey(h))
+                .toList();
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+
+        byte[] field = utf8("embedding");
+        List<Object> results = binaryRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String hash : missing) {
+                connection.hashCommands().hGet(utf8(SEMANTIC_CACHE_PREFIX + hash), field);
+            }
+            return null;
+        });
+
+        List<String> expired = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i++) {
+            String hash = missing.get(i);
+            if (!(results.get(i) instanceof byte[] storedEmbedding)) {
+                expired.add(hash);
+                continue;
             }
-            log.info("[语义相似度匹配] 相似度={}", String.format("%.4f", bestSimilarity));
-            return bestAnswer;
+            // 兼容旧版文本格式及未归一化的向量，解码后归一化一次再放入本地缓存
+            float[] vector = VectorMath.normalize(VectorCodec.decode(storedEmbedding));
+            candidateVectors.put(hash, vector);
+            vectors.put(hash, vector);
         }
 
-        return null;
+        // 缓存已过期，批量从索引中移除
+        if (!expired.isEmpty()) {
+            redisTemplate.opsForSet().remove(QUESTION_INDEX_KEY, expired.toArray());
+            log.debug("[语义缓存 清理过期索引] 数量={}", expired.size());
+        }
+        return vectors;
     }
 
     /**
-     * 清除所有语义缓存（文档更新时调用）
+     * 使依赖指定文档的缓存答案失效（文档删除时调用）
      */
-    public void invalidateAll() {
-        Set<String> keys = redisTemplate.keys(SEMANTIC_CACHE_PREFIX + "*");
-        if (keys != null && !keys.isEmpty()) {
-            redisTemplate.delete(keys);
+    public void invalidateByDocument(Long documentId) {
+        String tagKey = DOCUMENT_TAG_PREFIX + documentId;
+        Set<String> hashes = redisTemplate.opsForSet().members(tagKey);
+        redisTemplate.unlink(tagKey);
+        if (hashes == null || hashes.isEmpty()) {
+            return;
         }
 
-        Set<String> exactKeys = redisTemplate.keys(EXACT_CACHE_PREFIX + "*");
-        if (exactKeys != null && !exactKeys.isEmpty()) {
-            redisTemplate.delete(exactKeys);
+        invalidateHashes(hashes);
+        log.info("[语义缓存 按文档失效] documentId={}, 失效问答数={}", documentId, hashes.size());
+    }
+
+    /**
+     * 使与新内容语义相近的缓存问答失效（文档上传后调用）
+     * <p>
+     * 对每个新子块向量在问题 HNSW 索引中取近邻，相似度超过阈值的问题视为可能被新内容改变答案。
+     * HNSW 未启用或为空时，改为与暴力扫描路径相同的候选问题逐一计算相似度，避免失效静默跳过。
+     *
+     * @param contentEmbeddings 新文档子块向量
+     */
+    public void invalidateSimilarTo(List<float[]> contentEmbeddings) {
+        if (contentEmbeddings.isEmpty()) {
+            return;
         }
 
-        redisTemplate.delete(QUESTION_INDEX_KEY);
+        double threshold = cacheProperties.getUploadInvalidationThreshold();
+        Set<String> affected = new HashSet<>();
+        if (hnswIndex.isAvailable() && hnswIndex.size() > 0) {
+            for (float[] contentEmbedding : contentEmbeddings) {
+                for (HnswVectorIndexService.ScoredResult result :
+                        hnswIndex.searchWithScores(contentEmbedding, UPLOAD_INVALIDATION_NEIGHBORS)) {
+                    if (result.getSimilarity() >= threshold) {
+                        affected.add(result.getQuestionHash());
+                    }
+                }
+            }
+        } else {
+            affected.addAll(findSimilarBruteForce(contentEmbeddings, threshold));
+        }
+
+        if (!affected.isEmpty()) {
+            invalidateHashes(affected);
+        }
+        log.info("[语义缓存 按新内容失效] 新子块数={}, 失效问答数={}", contentEmbeddings.size(), affected.size());
+    }
+
+    /**
+     * 暴力扫描候选问题（与 {@link #findBySimilarityBruteForce} 相同的候选范围），返回与任一新内容相似的问题
+     */
+    private Set<String> findSimilarBruteForce(List<float[]> contentEmbeddings, double threshold) {
+        Set<String> candidateHashes = redisTemplate.opsForSet().members(QUESTION_INDEX_KEY);
+        if (candidateHashes == null || candidateHashes.isEmpty()) {
+            return Set.of();
+        }
+        List<String> candidates = candidateHashes.stream()
+                .limit(cacheProperties.getMaxCandidateScan())
+                .toList();
+        Map<String, float[]> vectors = loadCandidateVectors(candidates);
+
+        Set<String> affected = new HashSet<>();
+        for (float[] contentEmbedding : contentEmbeddings) {
+            if (affected.size() == vectors.size()) {
+                break;
+            }
+            for (Map.Entry<String, Double> match : rankBySimilarity(contentEmbedding, vectors, threshold).matches()) {
+                affected.add(match.getKey());
+            }
+        }
+        return affected;
+    }
+
+    private void invalidateHashes(Collection<String> hashes) {
+        List<String> keys = new ArrayList<>(hashes.size() * 2);
+        for (String hash : hashes) {
+            keys.add(SEMANTIC_CACHE_PREFIX + hash);
+            keys.add(EXACT_CACHE_PREFIX + hash);
+        }
+        redisTemplate.unlink(keys);
+        redisTemplate.opsForSet().remove(QUESTION_INDEX_KEY, hashes.toArray());
+
+        for (String hash : hashes) {
+            localSemanticCache.invalidate(hash);
+            candidateVectors.invalidate(hash);
+            hnswIndex.remove(hash);
+        }
+    }
+
+    /**
+     * 清除所有语义缓存（手动/运维场景）
+     * 使用 SCAN + UNLINK 分批删除，不阻塞 Redis
+     */
+    public void invalidateAll() {
+        long removed = unlinkByPattern(SEMANTIC_CACHE_PREFIX + "*")
+                + unlinkByPattern(EXACT_CACHE_PREFIX + "*")
+                + unlinkByPattern(DOCUMENT_TAG_PREFIX + "*");
+
+        redisTemplate.unlink(QUESTION_INDEX_KEY);
         localSemanticCache.invalidateAll();
+        candidateVectors.invalidateAll();
 
         // 同时清空 HNSW 索引
         hnswIndex.clear();
 
-        log.info("[语义缓存 已清空]");
+        log.info("[语义缓存 已清空] 删除 key 数={}", removed);
+    }
+
+    private long unlinkByPattern(String pattern) {
+        long removed = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<String> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= SCAN_BATCH_SIZE) {
+                    removed += unlink(batch);
+                }
+            }
+            removed += unlink(batch);
+        }
+        return removed;
+    }
+
+    private long unlink(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long count = redisTemplate.unlink(keys);
+        keys.clear();
+        return count != null ? count : 0;
     }
 
     /**
@@ -286,33 +516,6 @@ public class SemanticCacheService {
                 .build();
     }
 
-    /**
-     * 计算余弦相似度
-     * 范围 [-1, 1]，embedding 通常为非负值，实际范围 [0, 1]
-     * 值越接近 1 表示越相似
-     */
-    private double cosineSimilarity(float[] a, float[] b) {
-        if (a.length != b.length) {
-            return 0;
-        }
-
-        double dot = 0;
-        double normA = 0;
-        double normB = 0;
-
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-
-        if (normA == 0 || normB == 0) {
-            return 0;
-        }
-
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
-    }
-
     /**
      * 问题标准化（使用同义词归一化提高缓存命中率）
      */
@@ -330,22 +533,8 @@ public class SemanticCacheService {
         }
     }
 
-    private String formatEmbedding(float[] embedding) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(String.format("%.6f", embedding[i]));
-        }
-        return sb.toString();
-    }
-
-    private float[] parseEmbedding(String str) {
-        String[] parts = str.split(",");
-        float[] result = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            result[i] = Float.parseFloat(parts[i]);
-        }
-        return result;
+    private static byte[] utf8(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
     }
 
     private String truncate(String str, int maxLen) {
@@ -1,15 +1,21 @@
 package com.kxj.knowledgebase.service.cache;
 
 import com.kxj.knowledgebase.config.SynonymProperties;
+import com.kxj.knowledgebase.util.AhoCorasick;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * 同义词标准化处理器
@@ -19,6 +25,15 @@ import java.util.regex.Pattern;
  * - "Spring Boot咋用" → "springboot怎么用"
  * - "给我介绍一下Redis" → "什么是redis"
  * - "sb咋配置" → "springboot怎么配置"
+ * <p>
+ * 同义词、语气词、停用词编译进同一个 Aho-Corasick 自动机，一次扫描完成最左最长替换，耗时与词典大小无关。
+ * 同一个自动机服务两种用途（替换表不同）：
+ * <ul>
+ *     <li>缓存Key（{@link #normalizeForCache}）：去空白标点，同义词替换，删除语气词</li>
+ *     <li>全文检索查询（{@link #normalizeForSearch}）：标点变空格，停用词与语气词变空格，替代数据库中的 remove_stopwords</li>
+ * </ul>
+ * 词典可通过 {@link #update} 热更新、{@link #reload()} 重新读取配置，新自动机构建完成后原子替换，不影响进行中的请求。
+ * {@link #update} 的修改只保存在内存中，重启或 {@link #reload()} 后失效。
  */
 @Slf4j
 @Component
@@ -26,22 +41,98 @@ import java.util.regex.Pattern;
 public class SynonymNormalizer {
 
     private final SynonymProperties synonymProperties;
+    private final Environment environment;
 
-    // 预编译正则，提高性能
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\\s\\p{P}]+");
-    private static final Pattern PARTICLE_PATTERN = Pattern.compile("(的|了|吗|呢|吧|啊|呀|哇|哦|哈|咧|呗)");
-
-    // 按长度降序排列的同义词键列表（避免短词覆盖长词）
-    private List<String> sortedKeys;
+    // 当前词典（自动机 + 各用途替换表），热更新时整体替换
+    private volatile Dictionary dictionary;
 
     @PostConstruct
     public void init() {
-        Map<String, String> mappings = synonymProperties.getEffectiveMappings();
-        // 按长度降序排序，确保 "咋用" 先于 "咋" 被替换
-        this.sortedKeys = mappings.keySet().stream()
-                .sorted(Comparator.comparingInt(String::length).reversed())
-                .toList();
-        log.info("[同义词标准化器初始化完成] 共加载 {} 条同义词映射", mappings.size());
+        rebuild();
+    }
+
+    /**
+     * 从 Environment 重新绑定 cache.synonym 配置并重建自动机
+     * <p>
+     * 丢弃 {@link #update} 在内存中的修改，恢复为配置文件/环境变量中的词典。
+     *
+     * @return 自动机中的模式数
+     */
+    public synchronized int reload() {
+        SynonymProperties configured = Binder.get(environment)
+                .bindOrCreate("cache.synonym", SynonymProperties.class);
+        // 绑定不会触发 @PostConstruct，手动解析字符串格式的配置
+        configured.init();
+        synonymProperties.setEnabled(configured.isEnabled());
+        synonymProperties.setMappingsStr(configured.getMappingsStr());
+        synonymProperties.setMappings(configured.getMappings());
+        synonymProperties.setStopWordsStr(configured.getStopWordsStr());
+        synonymProperties.setStopWords(configured.getStopWords());
+        return rebuild();
+    }
+
+    /**
+     * 替换自定义同义词与停用词并重建自动机
+     * <p>
+     * 传入的字段整体替换上一次的自定义内容（不与之前的 PUT 或配置合并），仍与内置默认词典合并；
+     * 为 null 的字段保持不变。修改只保存在内存中，重启或 {@link #reload()} 后恢复为配置中的词典。
+     *
+     * @param mappings  自定义同义词，为 null 时保持不变
+     * @param stopWords 自定义停用词，为 null 时保持不变
+     * @return 自动机中的模式数
+     */
+    public synchronized int update(Map<String, String> mappings, List<String> stopWords) {
+        if (mappings != null) {
+            synonymProperties.setMappings(new HashMap<>(mappings));
+        }
+        if (stopWords != null) {
+            synonymProperties.setStopWords(new ArrayList<>(stopWords));
+        }
+        return rebuild();
+    }
+
+    /**
+     * 按 SynonymProperties 当前内容重建自动机
+     *
+     * @return 自动机中的模式数
+     */
+    private synchronized int rebuild() {
+        long startTime = System.nanoTime();
+        Map<String, String> mappings = synonymProperties.isEnabled() ? synonymProperties.getEffectiveMappings() : Map.of();
+        List<String> particles = synonymProperties.getParticles();
+        Set<String> stopWords = synonymProperties.getEffectiveStopWords();
+
+        // 模式 -> {缓存Key替换, 全文检索替换}；同一个词出现在多个词表时，同义词优先于语气词，语气词优先于停用词
+        Map<String, String[]> entries = new LinkedHashMap<>();
+        for (String word : stopWords) {
+            put(entries, word, null, " ");
+        }
+        for (String particle : particles) {
+            put(entries, particle, "", " ");
+        }
+        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
+            String value = mapping.getValue().toLowerCase(Locale.ROOT);
+            // 替换为空的口语化连接词（“给我”“帮我”）在检索查询中同样去掉
+            put(entries, mapping.getKey(), value, value.isEmpty() ? " " : null);
+        }
+
+        List<String> patterns = List.copyOf(entries.keySet());
+        String[] cacheReplacements = new String[patterns.size()];
+        String[] searchReplacements = new String[patterns.size()];
+        String[] particleReplacements = new String[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            String[] replacement = entries.get(patterns.get(i));
+            cacheReplacements[i] = replacement[0];
+            searchReplacements[i] = replacement[1];
+            particleReplacements[i] = particles.contains(patterns.get(i)) ? "" : null;
+        }
+
+        this.dictionary = new Dictionary(AhoCorasick.compile(patterns),
+                cacheReplacements, searchReplacements, particleReplacements);
+        log.info("[同义词标准化器加载完成] 同义词 {} 条, 停用词 {} 个, 语气词 {} 个, 自动机模式 {} 个, 耗时{}ms",
+                mappings.size(), stopWords.size(), particles.size(), patterns.size(),
+                (System.nanoTime() - startTime) / 1_000_000);
+        return patterns.size();
     }
 
     /**
@@ -50,9 +141,8 @@ public class SynonymNormalizer {
      * 处理流程：
      * 1. 转小写
      * 2. 去除空格和标点
-     * 3. 去除中文语气词
-     * 4. 同义词替换（按长度降序）
-     * 5. 清理空字符
+     * 3. 一次扫描完成同义词替换与语气词删除（最左最长）
+     * 4. 清理空字符
      *
      * @param question 原始用户问题
      * @return 标准化后的文本
@@ -61,33 +151,8 @@ public class SynonymNormalizer {
         if (question == null || question.trim().isEmpty()) {
             return "";
         }
-
-        String normalized = question.toLowerCase().trim();
-
-        // 1. 去除空格和标点
-        normalized = WHITESPACE_PATTERN.matcher(normalized).replaceAll("");
-
-        // 2. 去除中文语气词
-        normalized = PARTICLE_PATTERN.matcher(normalized).replaceAll("");
-
-        // 3. 同义词替换
-        Map<String, String> mappings = synonymProperties.getEffectiveMappings();
-        for (String key : sortedKeys) {
-            if (normalized.contains(key)) {
-                String value = mappings.get(key);
-                // 如果替换值为空字符串，直接删除该词
-                if (value.isEmpty()) {
-                    normalized = normalized.replace(key, "");
-                } else {
-                    normalized = normalized.replace(key, value);
-                }
-            }
-        }
-
-        // 4. 最终清理（同义词替换可能引入空格或重复）
-        normalized = normalized.trim();
-
-        return normalized;
+        Dictionary current = dictionary;
+        return current.automaton().replace(stripPunctuation(question), current.cacheReplacements()).trim();
     }
 
     /**
@@ -100,6 +165,23 @@ public class SynonymNormalizer {
         return normalize(question);
     }
 
+    /**
+     * 全文检索查询预处理：标点、停用词、语气词替换为空格，合并空白
+     * 过滤后为空时只去除标点（与原 remove_stopwords 调用方的回退逻辑一致）
+     *
+     * @param query 原始查询
+     * @return 用于全文检索的查询文本
+     */
+    public String normalizeForSearch(String query) {
+        if (query == null || query.isBlank()) {
+            return "";
+        }
+        String spaced = punctuationToSpace(query);
+        Dictionary current = dictionary;
+        String cleaned = collapseWhitespace(current.automaton().replace(spaced, current.searchReplacements()));
+        return cleaned.isEmpty() ? collapseWhitespace(spaced) : cleaned;
+    }
+
     /**
      * 获取标准化过程的调试信息
      *
@@ -107,10 +189,11 @@ public class SynonymNormalizer {
      * @return 标准化各阶段信息
      */
     public NormalizationDebugInfo debug(String question) {
-        String step1 = question.toLowerCase().trim();
-        String step2 = WHITESPACE_PATTERN.matcher(step1).replaceAll("");
-        String step3 = PARTICLE_PATTERN.matcher(step2).replaceAll("");
-        String step4 = applySynonyms(step3);
+        Dictionary current = dictionary;
+        String step1 = question.toLowerCase(Locale.ROOT).trim();
+        String step2 = stripPunctuation(question);
+        String step3 = current.automaton().replace(step2, current.particleReplacements());
+        String step4 = current.automaton().replace(step2, current.cacheReplacements());
 
         return NormalizationDebugInfo.builder()
                 .original(question)
@@ -122,16 +205,80 @@ public class SynonymNormalizer {
                 .build();
     }
 
-    private String applySynonyms(String text) {
-        String result = text;
-        Map<String, String> mappings = synonymProperties.getEffectiveMappings();
-        for (String key : sortedKeys) {
-            if (result.contains(key)) {
-                String value = mappings.get(key);
-                result = result.replace(key, value);
+    private static void put(Map<String, String[]> entries, String word, String cacheReplacement, String searchReplacement) {
+        String pattern = stripPunctuation(word);
+        if (pattern.isEmpty()) {
+            return;
+        }
+        String[] replacement = entries.computeIfAbsent(pattern, k -> new String[2]);
+        if (cacheReplacement != null) {
+            replacement[0] = cacheReplacement;
+        }
+        if (searchReplacement != null) {
+            replacement[1] = searchReplacement;
+        }
+    }
+
+    /**
+     * 转小写并去除空白与标点（等价于原正则 [\s\p{P}]+）
+     */
+    private static String stripPunctuation(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (!Character.isWhitespace(c) && !isPunctuation(c)) {
+                sb.append(c);
             }
         }
-        return result;
+        return sb.toString();
+    }
+
+    /**
+     * 转小写并将标点替换为空格（保留英文单词之间的分隔）
+     */
+    private static String punctuationToSpace(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            sb.append(isPunctuation(c) ? ' ' : c);
+        }
+        return sb.toString();
+    }
+
+    private static String collapseWhitespace(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = !sb.isEmpty();
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isPunctuation(char c) {
+        return switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                 Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+                 Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 编译后的词典：自动机 + 各用途替换表（null 表示该模式在此用途下不参与匹配）
+     */
+    private record Dictionary(AhoCorasick automaton, String[] cacheReplacements, String[] searchReplacements,
+                              String[] particleReplacements) {
     }
 
     /**
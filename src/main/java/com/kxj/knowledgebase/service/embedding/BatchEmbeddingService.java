@@ -0,0 +1,43 @@
+package com.kxj.knowledgebase.service.embedding;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 批量向量化服务
+ * 先按内容哈希查向量缓存（{@link CachedEmbeddingService}），未命中的文本提交给 {@link EmbeddingDispatcher}，
+ * 由其按微批合并后通过 embedAll 请求 Ollama，与对话查询共享同一个在途批次预算
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchEmbeddingService {
+
+    private final CachedEmbeddingService cachedEmbeddingService;
+
+    /**
+     * 批量向量化
+     *
+     * @param texts 待向量化文本
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<float[]> vectors;
+        try {
+            vectors = cachedEmbeddingService.embedAll(texts);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("批量向量化失败: " + e.getMessage(), e);
+        }
+
+        log.info("[批量向量化完成] 文本数={}, 总耗时{}ms", texts.size(), System.currentTimeMillis() - startTime);
+        return vectors;
+    }
+}
@@ -3,36 +3,62 @@ package com.kxj.knowledgebase.service.embedding;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kxj.knowledgebase.config.CacheProperties;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import com.kxj.knowledgebase.util.SingleFlight;
+import com.kxj.knowledgebase.util.StringUtils;
+import com.kxj.knowledgebase.util.VectorCodec;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 带多级缓存的 Embedding 服务
  * L1: Caffeine 本地缓存（进程内，亚毫秒级）
  * L2: Redis 分布式缓存（跨实例共享）
- * L3: 实际调用 Ollama
+ * L3: 经 {@link EmbeddingDispatcher} 与其他并发请求合并后调用 Ollama
+ * 文档入库的批量接口在 L2 之后还会查询持久化的 {@link EmbeddingStore}
+ * 缓存 key 为规范化文本（NFKC、合并空白）的 SHA-256，Redis key 另带模型名
+ * L1 未命中后按内容哈希合并并发请求，相同文本同时只有一次 Redis 读取 / Ollama 调用
+ * <p>
+ * 升级前的 Redis key 为 {@code emb:<Base64(SHA-256(去首尾空白的原文))>}，开启
+ * {@code cache.semantic.embedding-legacy-key-fallback} 时新 key 未命中会再查旧 key，命中后以新 key 重写；
+ * 旧 key 不再写入，一个 embedding-ttl 后全部过期，届时可关闭该开关省去一次 Redis 读取。
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CachedEmbeddingService {
 
-    private final EmbeddingService embeddingService;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final EmbeddingDispatcher embeddingDispatcher;
+    private final EmbeddingStore embeddingStore;
+    private final ExecutorService optimizedExecutorService;
+    private final RagMetrics ragMetrics;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
     private final CacheProperties cacheProperties;
 
     private Cache<String, float[]> localCache;
 
+    // L1 未命中后的并发请求合并（key: 内容哈希）
+    private final SingleFlight<String, Loaded> inFlight = new SingleFlight<>();
+
     @PostConstruct
     public void init() {
         localCache = Caffeine.newBuilder()
@@ -46,54 +72,214 @@ public class CachedEmbeddingService {
      * 获取文本的 embedding，带多级缓存
      */
     public float[] embed(String text) {
-        if (text == null || text.trim().isEmpty()) {
+        String normalized = StringUtils.normalizeForEmbedding(text);
+        if (normalized.isEmpty()) {
             return new float[0];
         }
 
-        String contentHash = sha256(text.trim());
-        String redisKey = "emb:" + contentHash;
+        String contentHash = StringUtils.sha256Hex(normalized);
 
         // L1: 本地缓存
         float[] cached = localCache.getIfPresent(contentHash);
         if (cached != null) {
             log.debug("[Embedding L1命中] contentHash={}", contentHash.substring(0, 8));
+            ragMetrics.embeddingLookup("l1");
             return cached;
         }
 
-        // L2: Redis缓存
-        String redisValue = redisTemplate.opsForValue().get(redisKey);
+        return inFlight.execute(contentHash, () -> load(text, normalized, contentHash)).embedding();
+    }
+
+    private Loaded load(String rawText, String text, String contentHash) {
+        String redisKey = redisKey(contentHash);
+
+        // 等待合并期间可能已被其他调用方回填
+        float[] cached = localCache.getIfPresent(contentHash);
+        if (cached != null) {
+            ragMetrics.embeddingLookup("l1");
+            return new Loaded(cached, false);
+        }
+
+        // L2: Redis缓存，新 key 未命中时回退读取升级前的旧 key
+        byte[] redisValue = binaryRedisTemplate.opsForValue().get(redisKey);
+        if (redisValue == null && cacheProperties.isEmbeddingLegacyKeyFallback()) {
+            redisValue = binaryRedisTemplate.opsForValue().get(legacyRedisKey(rawText));
+            if (redisValue != null) {
+                writeRedis(redisKey, VectorCodec.decode(redisValue));
+            }
+        }
         if (redisValue != null) {
-            float[] embedding = parseEmbedding(redisValue);
+            float[] embedding = VectorCodec.decode(redisValue);
             localCache.put(contentHash, embedding); // 回填L1
             log.debug("[Embedding L2命中] contentHash={}", contentHash.substring(0, 8));
-            return embedding;
+            ragMetrics.embeddingLookup("l2");
+            return new Loaded(embedding, false);
         }
 
         // L3: 调用实际服务
         log.debug("[Embedding 未命中] 调用Ollama, contentHash={}", contentHash.substring(0, 8));
-        long start = System.currentTimeMillis();
-        float[] embedding = embeddingService.embed(text);
-        long cost = System.currentTimeMillis() - start;
+        long start = System.nanoTime();
+        float[] embedding = embeddingDispatcher.embed(text);
+        long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        ragMetrics.embeddingLookup("l3");
+        ragMetrics.embeddingCompute(start);
 
         // 回填缓存
         localCache.put(contentHash, embedding);
-        redisTemplate.opsForValue().set(redisKey, formatEmbedding(embedding),
-                cacheProperties.getEmbeddingTtl());
+        writeRedis(redisKey, embedding);
 
         log.info("[Embedding 计算完成] 耗时{}ms, contentHash={}", cost, contentHash.substring(0, 8));
-        return embedding;
+        return new Loaded(embedding, true);
     }
 
     /**
-     * 批量获取 embedding，利用并行提高效率
+     * 批量获取 embedding：各条文本在虚拟线程上并发查缓存，未命中部分由调度器合并为批量请求
      */
     public float[][] embedBatch(String[] texts) {
-        return Arrays.stream(texts)
-                .parallel()
-                .map(this::embed)
+        List<CompletableFuture<float[]>> futures = Arrays.stream(texts)
+                .map(text -> CompletableFuture.supplyAsync(() -> embed(text), optimizedExecutorService))
+                .toList();
+        return futures.stream()
+                .map(CompletableFuture::join)
                 .toArray(float[][]::new);
     }
 
+    /**
+     * 文档入库用的批量向量化：按内容哈希依次查 L1 / L2 / 向量存储，未命中部分提交调度器合并请求
+     * <p>
+     * 计算结果每条完成即写入 Redis，入库中途进程退出时已计算的向量不会丢失，恢复时直接命中 L2；
+     * 本次调用结束后再批量写入 {@link EmbeddingStore}，跨文档重复的文本之后不再调用模型。
+     * 写入向量存储的只有模型直接返回的全精度向量；L1/L2 命中的向量可能经过 FLOAT16/INT8 量化，不写入。
+     * 入库文本大多只出现一次，不回填 L1，避免挤掉对话查询的热点向量。
+     *
+     * @param texts 待向量化文本
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        float[][] results = new float[texts.size()][];
+        String[] normalized = new String[texts.size()];
+        String[] hashes = new String[texts.size()];
+        List<String> redisKeys = new ArrayList<>();
+        List<Integer> redisIndexes = new ArrayList<>();
+        int l1Hits = 0;
+
+        // L1: 本地缓存
+        for (int i = 0; i < texts.size(); i++) {
+            normalized[i] = StringUtils.normalizeForEmbedding(texts.get(i));
+            if (normalized[i].isEmpty()) {
+                continue;
+            }
+            hashes[i] = StringUtils.sha256Hex(normalized[i]);
+            float[] cached = localCache.getIfPresent(hashes[i]);
+            if (cached != null) {
+                results[i] = cached;
+                l1Hits++;
+            } else {
+                redisKeys.add(redisKey(hashes[i]));
+                redisIndexes.add(i);
+            }
+        }
+
+        // L2: Redis 批量读取
+        int l2Hits = 0;
+        if (!redisKeys.isEmpty()) {
+            List<byte[]> values = binaryRedisTemplate.opsForValue().multiGet(redisKeys);
+            for (int k = 0; values != null && k < values.size(); k++) {
+                byte[] value = values.get(k);
+                if (value != null) {
+                    results[redisIndexes.get(k)] = VectorCodec.decode(value);
+                    l2Hits++;
+                }
+            }
+        }
+
+        // L2 旧 key：升级前写入的缓存，命中后以新 key 重写
+        if (cacheProperties.isEmbeddingLegacyKeyFallback()) {
+            List<String> legacyKeys = new ArrayList<>();
+            List<Integer> legacyIndexes = new ArrayList<>();
+            for (int i : redisIndexes) {
+                if (results[i] == null) {
+                    legacyKeys.add(legacyRedisKey(texts.get(i)));
+                    legacyIndexes.add(i);
+                }
+            }
+            List<byte[]> values = legacyKeys.isEmpty() ? null : binaryRedisTemplate.opsForValue().multiGet(legacyKeys);
+            for (int k = 0; values != null && k < values.size(); k++) {
+                byte[] value = values.get(k);
+                if (value != null) {
+                    int i = legacyIndexes.get(k);
+                    results[i] = VectorCodec.decode(value);
+                    writeRedis(redisKey(hashes[i]), results[i]);
+                    l2Hits++;
+                }
+            }
+        }
+
+        // 向量存储：PostgreSQL 中按 (内容哈希, 模型) 持久化的向量
+        Set<String> storeLookups = new HashSet<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (results[i] == null && hashes[i] != null) {
+                storeLookups.add(hashes[i]);
+            }
+        }
+        Map<String, float[]> stored = embeddingStore.findAll(storeLookups);
+        int storeHits = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            if (results[i] == null && hashes[i] != null && stored.containsKey(hashes[i])) {
+                results[i] = stored.get(hashes[i]);
+                storeHits++;
+            }
+        }
+
+        // L3: 未命中的文本按内容哈希去重（含其他并发入库任务中的相同文本）后提交调度器，每条完成即写回 Redis
+        Map<String, CompletableFuture<float[]>> pending = new HashMap<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < texts.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            missIndexes.add(i);
+            if (hashes[i] == null) {
+                continue;
+            }
+            String text = normalized[i];
+            pending.computeIfAbsent(hashes[i], hash -> inFlight.executeAsync(hash, () ->
+                    embeddingDispatcher.submit(text).thenApply(embedding -> {
+                        writeRedis(redisKey(hash), embedding);
+                        return new Loaded(embedding, true);
+                    })));
+        }
+        // 可能与对话查询合并到同一次加载，那次加载若命中 L2 则结果不是全精度，不写入向量存储
+        Map<String, float[]> computed = new HashMap<>();
+        for (int i : missIndexes) {
+            if (hashes[i] == null) {
+                // 入库文本走普通通道，不占对话查询的优先通道
+                results[i] = embeddingDispatcher.embedAll(List.of(texts.get(i))).get(0);
+                continue;
+            }
+            Loaded loaded = join(pending.get(hashes[i]));
+            results[i] = loaded.embedding();
+            if (loaded.computed()) {
+                computed.put(hashes[i], results[i]);
+            }
+        }
+        if (!pending.isEmpty()) {
+            ragMetrics.embeddingCompute(start);
+        }
+        if (!computed.isEmpty()) {
+            embeddingStore.saveAll(computed);
+        }
+
+        ragMetrics.embeddingLookup("l1", l1Hits);
+        ragMetrics.embeddingLookup("l2", l2Hits);
+        ragMetrics.embeddingLookup("store", storeHits);
+        ragMetrics.embeddingLookup("l3", pending.size());
+        log.info("[批量 Embedding] 文本数={}, L1命中={}, L2命中={}, 存储命中={}, 计算={}",
+                texts.size(), l1Hits, l2Hits, storeHits, pending.size());
+        return Arrays.asList(results);
+    }
+
     /**
      * 获取缓存统计
      */
@@ -101,32 +287,47 @@ public class CachedEmbeddingService {
         return localCache.stats().toString();
     }
 
-    private String sha256(String text) {
+    /**
+     * Redis key 带模型名，切换向量化模型后不会读到旧模型的向量
+     */
+    private String redisKey(String contentHash) {
+        return "emb:" + embeddingStore.getModelName() + ":" + contentHash;
+    }
+
+    /**
+     * 升级前的 Redis key：未规范化、不带模型名
+     */
+    private static String legacyRedisKey(String rawText) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(hash);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(rawText.trim().getBytes(StandardCharsets.UTF_8));
+            return "emb:" + Base64.getEncoder().encodeToString(hash);
         } catch (NoSuchAlgorithmException e) {
-            // fallback to simple hash
-            return String.valueOf(text.hashCode());
+            throw new IllegalStateException("SHA-256 不可用", e);
         }
     }
 
-    private String formatEmbedding(float[] embedding) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(embedding[i]);
+    private static Loaded join(CompletableFuture<Loaded> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("向量化失败", e.getCause());
         }
-        return sb.toString();
     }
 
-    private float[] parseEmbedding(String str) {
-        String[] parts = str.split(",");
-        float[] result = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            result[i] = Float.parseFloat(parts[i]);
-        }
-        return result;
+    /**
+     * 一次加载的结果
+     *
+     * @param computed 是否由模型直接计算（全精度），否则来自可能已量化的缓存
+     */
+    private record Loaded(float[] embedding, boolean computed) {
+    }
+
+    private void writeRedis(String redisKey, float[] embedding) {
+        binaryRedisTemplate.opsForValue().set(redisKey,
+                VectorCodec.encode(embedding, cacheProperties.getVectorEncoding()),
+                cacheProperties.getEmbeddingTtl());
     }
 }
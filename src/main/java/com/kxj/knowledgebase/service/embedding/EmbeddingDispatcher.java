@@ -0,0 +1,232 @@
+package com.kxj.knowledgebase.service.embedding;
+
+import com.kxj.knowledgebase.config.DocumentProcessingProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 向量化请求调度器（微批合并）
+ * <p>
+ * 所有对 Ollama 的向量化请求（对话查询、文档入库）都经由此处：
+ * 请求先进入队列，调度线程在 embedding-max-wait 时间窗内最多收集 embedding-batch-size 条文本，
+ * 通过一次 embedAll 发送，再按顺序完成每个调用方的 future。
+ * 同时在途的批次数受 max-concurrent-embedding-batches 限制；
+ * 许可用尽时请求在队列中继续累积，下一批自然更满。
+ * <p>
+ * 对话查询（{@link #embed}）走优先通道：队列中总排在入库文本（{@link #submit} / {@link #embedAll}）之前，
+ * 并预留一个在途许可（max-concurrent-embedding-batches ≥ 2 时），入库任务只能占用其余许可，
+ * 上传期间对话的单条向量化不必排在成百上千条入库文本之后。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingDispatcher {
+
+    private final EmbeddingService embeddingService;
+    private final ExecutorService optimizedExecutorService;
+    private final DocumentProcessingProperties documentProcessingProperties;
+
+    // 等待入库许可时检查优先请求的间隔
+    private static final long BULK_PERMIT_POLL_MILLIS = 5;
+
+    // 对话请求在前，同一通道内先到先发
+    private final PriorityBlockingQueue<PendingEmbedding> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing((PendingEmbedding p) -> !p.interactive()).thenComparingLong(PendingEmbedding::seq));
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 对 Ollama 的全局在途批次限制
+    private Semaphore inFlightPermits;
+
+    // 入库批次可用的在途许可（比全局少一个，留给对话查询）
+    private Semaphore bulkPermits;
+
+    private Thread dispatcherThread;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        int maxInFlight = Math.max(1, documentProcessingProperties.getMaxConcurrentEmbeddingBatches());
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.bulkPermits = new Semaphore(Math.max(1, maxInFlight - 1));
+        this.running = true;
+        this.dispatcherThread = Thread.ofVirtual().name("embedding-dispatcher").start(this::dispatchLoop);
+        log.info("[初始化向量化调度器，批大小: {}, 最长等待: {}ms, 最大在途批次: {}]",
+                documentProcessingProperties.getEmbeddingBatchSize(),
+                documentProcessingProperties.getEmbeddingMaxWait().toMillis(), maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        List<PendingEmbedding> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(p -> p.future().completeExceptionally(new IllegalStateException("向量化调度器已关闭")));
+    }
+
+    /**
+     * 提交单条入库文本，返回其向量的 future
+     */
+    public CompletableFuture<float[]> submit(String text) {
+        return enqueue(text, false);
+    }
+
+    /**
+     * 同步向量化单条查询文本（优先通道，与其他并发查询合并发送）
+     */
+    public float[] embed(String text) {
+        return join(enqueue(text, true));
+    }
+
+    /**
+     * 同步向量化多条文本
+     *
+     * @param texts 待向量化文本
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        List<CompletableFuture<float[]>> futures = texts.stream()
+                .map(this::submit)
+                .toList();
+        return futures.stream()
+                .map(EmbeddingDispatcher::join)
+                .toList();
+    }
+
+    private CompletableFuture<float[]> enqueue(String text, boolean interactive) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("向量化调度器已关闭"));
+            return future;
+        }
+        queue.add(new PendingEmbedding(text, future, interactive, sequence.getAndIncrement()));
+        return future;
+    }
+
+    private void dispatchLoop() {
+        int maxBatchSize = Math.max(1, documentProcessingProperties.getEmbeddingBatchSize());
+        long maxWaitNanos = documentProcessingProperties.getEmbeddingMaxWait().toNanos();
+
+        while (running) {
+            try {
+                PendingEmbedding first = queue.take();
+                boolean bulk = !first.interactive();
+                if (bulk && !acquireBulkPermit()) {
+                    // 等待期间来了对话请求：放回队列，先发对话批次
+                    queue.add(first);
+                    continue;
+                }
+                inFlightPermits.acquire();
+
+                List<PendingEmbedding> batch = collectBatch(first, maxBatchSize, maxWaitNanos);
+                optimizedExecutorService.execute(() -> sendBatch(batch, bulk));
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                log.error("[向量化调度异常]", e);
+            }
+        }
+        log.info("[向量化调度器已停止]");
+    }
+
+    /**
+     * 等待入库许可；等待期间队首出现对话请求时放弃等待
+     *
+     * @return 是否取得许可
+     */
+    private boolean acquireBulkPermit() throws InterruptedException {
+        while (!bulkPermits.tryAcquire(BULK_PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            PendingEmbedding head = queue.peek();
+            if (head != null && head.interactive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在时间窗内收集一批请求，凑满批大小立即返回
+     * <p>
+     * 队列按优先级出队，排队中的对话请求总是先进入批次；对话批次只收集对话请求，
+     * 不让入库文本拖慢查询，也不占用入库许可。
+     */
+    private List<PendingEmbedding> collectBatch(PendingEmbedding first, int maxBatchSize, long maxWaitNanos)
+            throws InterruptedException {
+        List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        boolean interactiveOnly = first.interactive();
+        long deadline = System.nanoTime() + maxWaitNanos;
+
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            if (interactiveOnly && !next.interactive()) {
+                queue.add(next);
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void sendBatch(List<PendingEmbedding> batch, boolean bulk) {
+        try {
+            long start = System.currentTimeMillis();
+            List<float[]> vectors = embeddingService.embedAll(batch.stream().map(PendingEmbedding::text).toList());
+            if (vectors.size() != batch.size()) {
+                throw new IllegalStateException(
+                        "向量数量与文本数量不一致: " + vectors.size() + " != " + batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(vectors.get(i));
+            }
+            log.debug("[向量化批次完成] 条数={}, 耗时{}ms, 队列剩余={}",
+                    batch.size(), System.currentTimeMillis() - start, queue.size());
+        } catch (Exception e) {
+            log.warn("[向量化批次失败] 条数={}: {}", batch.size(), e.getMessage());
+            batch.forEach(p -> p.future().completeExceptionally(e));
+        } finally {
+            inFlightPermits.release();
+            if (bulk) {
+                bulkPermits.release();
+            }
+        }
+    }
+
+    private static float[] join(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("向量化失败", e.getCause());
+        }
+    }
+
+    private record PendingEmbedding(String text, CompletableFuture<float[]> future, boolean interactive, long seq) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.kxj.knowledgebase.service.embedding;
 
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import jakarta.annotation.PostConstruct;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.List;
 
 @Slf4j
 @Service
@@ -43,4 +45,24 @@ public class EmbeddingService {
         return vector;
     }
 
+    /**
+     * 批量向量化，一次请求 Ollama 返回多条向量
+     *
+     * @param texts 待向量化文本
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        List<TextSegment> segments = texts.stream()
+                .map(TextSegment::from)
+                .toList();
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        log.debug("[批量向量化完成，条数: {}]", embeddings.size());
+        return embeddings.stream()
+                .map(Embedding::vector)
+                .toList();
+    }
+
 }
\ No newline at end of file
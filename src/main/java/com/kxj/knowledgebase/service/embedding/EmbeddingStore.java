@@ -0,0 +1,89 @@
+package com.kxj.knowledgebase.service.embedding;
+
+import com.kxj.knowledgebase.util.StringUtils;
+import com.kxj.knowledgebase.util.VectorCodec;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内容寻址的向量存储（PostgreSQL embedding_store 表）
+ * <p>
+ * key 为 (规范化文本哈希, 模型名)，不设过期时间。文档入库时在 Redis 之后查询，
+ * 跨文档重复的文本全库只向量化一次；切换模型后按新模型名重新计算。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingStore {
+
+    private static final String FIND_SQL =
+            "SELECT content_hash, CAST(embedding AS text) AS embedding FROM embedding_store WHERE model = ? AND content_hash = ANY(?)";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO embedding_store (content_hash, model, embedding)
+            VALUES (?, ?, CAST(? AS vector))
+            ON CONFLICT (content_hash, model) DO NOTHING
+            """;
+
+    // 单次批量写入条数
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${langchain4j.ollama.embedding-model.model-name}")
+    private String modelName;
+
+    /**
+     * 按内容哈希批量查询已存储的向量
+     *
+     * @param contentHashes 规范化文本哈希
+     * @return 内容哈希 -> 向量（未命中的不在结果中）
+     */
+    public Map<String, float[]> findAll(Collection<String> contentHashes) {
+        if (contentHashes.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, float[]> found = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_SQL);
+            ps.setString(1, modelName);
+            ps.setArray(2, con.createArrayOf("varchar", contentHashes.toArray()));
+            return ps;
+        }, rs -> {
+            found.put(rs.getString("content_hash"), VectorCodec.decodeText(rs.getString("embedding")));
+        });
+        return found;
+    }
+
+    /**
+     * 批量写入向量，已存在的 key 跳过
+     *
+     * @param embeddings 内容哈希 -> 向量
+     */
+    public void saveAll(Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, float[]>> entries = new ArrayList<>(embeddings.entrySet());
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, WRITE_BATCH_SIZE, (ps, e) -> {
+            ps.setString(1, e.getKey());
+            ps.setString(2, modelName);
+            ps.setString(3, StringUtils.floatArrayToString(e.getValue()));
+        });
+        log.debug("[向量存储写入] 条数={}, model={}", entries.size(), modelName);
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+}
@@ -0,0 +1,204 @@
+package com.kxj.knowledgebase.service.ingestion;
+
+import com.kxj.knowledgebase.dto.BatchUploadProgress;
+import com.kxj.knowledgebase.entity.Document;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.entity.IngestionJob;
+import com.kxj.knowledgebase.entity.IngestionJobItem;
+import com.kxj.knowledgebase.repository.DocumentRepository;
+import com.kxj.knowledgebase.repository.IngestionJobItemRepository;
+import com.kxj.knowledgebase.repository.IngestionJobRepository;
+import com.kxj.knowledgebase.service.DocumentServiceOptimized.SpooledUpload;
+import com.kxj.knowledgebase.service.storage.VectorStoreService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 文档入库任务与检查点
+ * <p>
+ * 每个文档依次经过 PENDING → UPLOADED → CHUNKED → COMPLETED：
+ * <ul>
+ *     <li>UPLOADED：文件已在 MinIO、文档记录已创建，恢复时从 MinIO 取回文件，不再重复上传</li>
+ *     <li>CHUNKED：chunk 主键已预分配并持久化，恢复时重新切分（向量命中内容哈希缓存）后沿用同一组主键，
+ *         跳过已提交的批次</li>
+ * </ul>
+ * 每个 chunk 批次的写入与检查点更新在同一事务中提交。
+ * <p>
+ * PENDING 条目已带 documentId 时表示同名文档的新版本：按 chunk 内容哈希与库中已有 chunks 比对后增量写入，
+ * 比对结果只取决于库中当前数据，恢复时重新比对即可，不使用批次检查点。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionJobService {
+
+    private static final Set<IngestionJobItem.Status> UNFINISHED = EnumSet.of(
+            IngestionJobItem.Status.PENDING, IngestionJobItem.Status.UPLOADED, IngestionJobItem.Status.CHUNKED);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final IngestionJobRepository jobRepository;
+    private final IngestionJobItemRepository itemRepository;
+    private final VectorStoreService vectorStoreService;
+    private final DocumentRepository documentRepository;
+
+    /**
+     * 创建入库任务，每个暂存文件对应一个 PENDING 条目
+     *
+     * @param previousVersions 文件名 -> 已有同名文档ID，命中的条目作为该文档的新版本入库
+     */
+    @Transactional
+    public List<IngestionJobItem> createJob(String jobId, List<SpooledUpload> uploads,
+                                            Map<String, Long> previousVersions) {
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.save(IngestionJob.builder()
+                .id(jobId)
+                .status(uploads.isEmpty() ? IngestionJob.Status.COMPLETED : IngestionJob.Status.RUNNING)
+                .totalDocuments(uploads.size())
+                .createTime(now)
+                .updateTime(now)
+                .build());
+
+        List<IngestionJobItem> items = uploads.stream()
+                .map(upload -> IngestionJobItem.builder()
+                        .jobId(jobId)
+                        .fileName(upload.fileName())
+                        .fileHash(upload.fileHash())
+                        .fileSize(upload.fileSize())
+                        .contentType(upload.contentType())
+                        .spoolPath(upload.path().toString())
+                        .documentId(previousVersions.get(upload.fileName()))
+                        .status(IngestionJobItem.Status.PENDING)
+                        .totalBatches(0)
+                        .persistedBatches(0)
+                        .updateTime(now)
+                        .build())
+                .toList();
+        return itemRepository.saveAll(items);
+    }
+
+    /**
+     * 检查点：文件已上传 MinIO 并创建文档记录
+     */
+    public void markUploaded(IngestionJobItem item, Long documentId, String objectName) {
+        item.setDocumentId(documentId);
+        item.setObjectName(objectName);
+        item.setStatus(IngestionJobItem.Status.UPLOADED);
+        save(item);
+    }
+
+    /**
+     * 保存文档记录并推进到 UPLOADED 检查点（同一事务）
+     * <p>
+     * 新版本会递增文档版本号，两者分开提交时进程在中间退出会让恢复时再递增一次
+     *
+     * @return 保存后的文档
+     */
+    @Transactional
+    public Document registerUpload(IngestionJobItem item, Document document, String objectName) {
+        Document saved = documentRepository.save(document);
+        markUploaded(item, saved.getId(), objectName);
+        return saved;
+    }
+
+    /**
+     * 检查点：已切分并预分配 chunk 主键
+     */
+    public void markChunked(IngestionJobItem item, List<Long> chunkIds, int totalBatches) {
+        item.setChunkIds(chunkIds.toArray(Long[]::new));
+        item.setTotalBatches(totalBatches);
+        item.setPersistedBatches(0);
+        item.setStatus(IngestionJobItem.Status.CHUNKED);
+        save(item);
+    }
+
+    /**
+     * 写入一个 chunk 批次并推进检查点（同一事务）
+     *
+     * @param batchNo 批次序号（从 1 开始）
+     */
+    @Transactional
+    public void persistBatch(IngestionJobItem item, List<DocumentChunk> batch, int batchNo) {
+        vectorStoreService.insertChunks(batch);
+        itemRepository.updatePersistedBatches(item.getId(), batchNo, LocalDateTime.now());
+        item.setPersistedBatches(batchNo);
+    }
+
+    public void markCompleted(IngestionJobItem item) {
+        item.setStatus(IngestionJobItem.Status.COMPLETED);
+        item.setErrorMessage(null);
+        save(item);
+    }
+
+    public void markFailed(IngestionJobItem item, String errorMessage) {
+        item.setStatus(IngestionJobItem.Status.FAILED);
+        item.setErrorMessage(errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH
+                ? errorMessage.substring(0, MAX_ERROR_LENGTH) : errorMessage);
+        save(item);
+    }
+
+    /**
+     * 所有条目都已结束时将任务标记为完成
+     */
+    public void completeJobIfFinished(String jobId) {
+        if (itemRepository.countByJobIdAndStatusIn(jobId, UNFINISHED) > 0) {
+            return;
+        }
+        jobRepository.findById(jobId).ifPresent(job -> {
+            if (job.getStatus() != IngestionJob.Status.COMPLETED) {
+                job.setStatus(IngestionJob.Status.COMPLETED);
+                job.setUpdateTime(LocalDateTime.now());
+                jobRepository.save(job);
+                log.info("[入库任务完成] jobId={}", jobId);
+            }
+        });
+    }
+
+    /**
+     * 进程退出时尚未结束的条目（启动时恢复）
+     */
+    public List<IngestionJobItem> findUnfinishedItems() {
+        return itemRepository.findByStatusInOrderById(UNFINISHED);
+    }
+
+    /**
+     * 任务进度
+     *
+     * @return 任务不存在时返回 null
+     */
+    public BatchUploadProgress getProgress(String jobId) {
+        IngestionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return null;
+        }
+
+        Map<IngestionJobItem.Status, Long> counts = itemRepository.findByJobId(jobId).stream()
+                .collect(Collectors.groupingBy(IngestionJobItem::getStatus, Collectors.counting()));
+        int total = job.getTotalDocuments();
+        int completed = counts.getOrDefault(IngestionJobItem.Status.COMPLETED, 0L).intValue();
+        int failed = counts.getOrDefault(IngestionJobItem.Status.FAILED, 0L).intValue();
+
+        return BatchUploadProgress.builder()
+                .taskId(jobId)
+                .totalDocuments(total)
+                .completedDocuments(completed)
+                .failedDocuments(failed)
+                .progress(total > 0 ? (double) (completed + failed) / total * 100 : 0)
+                .status(job.getStatus() == IngestionJob.Status.COMPLETED ? "COMPLETED" : "PROCESSING")
+                .build();
+    }
+
+    private void save(IngestionJobItem item) {
+        item.setUpdateTime(LocalDateTime.now());
+        itemRepository.save(item);
+    }
+}
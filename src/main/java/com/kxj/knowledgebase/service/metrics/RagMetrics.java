@@ -0,0 +1,127 @@
+package com.kxj.knowledgebase.service.metrics;
+
+import com.kxj.knowledgebase.service.retriever.HybridSearchExecutor;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG 链路指标（通过 Actuator /actuator/prometheus 暴露）
+ * <p>
+ * 指标一览：
+ * <ul>
+ *     <li>rag.embedding.lookups{level=l1|l2|store|l3}：向量缓存各级命中次数（store 为入库时的持久化向量存储），rag.embedding.compute：L3 调用 Ollama 耗时</li>
+ *     <li>rag.semantic.cache.lookups{level=l1|l2|l3_hnsw|l3_scan|miss}：语义缓存各级命中次数，
+ *         rag.semantic.cache.similarity{path=hnsw|scan}：最相似候选的相似度分布（用于调整阈值）</li>
+ *     <li>rag.retrieval.leg{leg=vector|fulltext|server, status}：两路检索及服务端混合检索耗时，rag.retrieval.parent.assembly：父块组装耗时，
+ *         rag.retrieval：整次检索耗时</li>
+ *     <li>rag.llm.generation{mode=blocking|stream}：大模型生成耗时，rag.llm.tokens{type=prompt|completion}：token 数</li>
+ *     <li>rag.ingestion.stage{stage=parse|chunk|embed|persist}：文档入库各阶段耗时</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class RagMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public void embeddingLookup(String level) {
+        embeddingLookup(level, 1);
+    }
+
+    public void embeddingLookup(String level, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter.builder("rag.embedding.lookups")
+                .description("向量缓存查找次数（按命中层级）")
+                .tag("level", level)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    public void embeddingCompute(long startNanos) {
+        timer("rag.embedding.compute", "L3 调用 Ollama 向量化耗时")
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void semanticCacheLookup(String level) {
+        Counter.builder("rag.semantic.cache.lookups")
+                .description("语义缓存查找次数（按命中层级）")
+                .tag("level", level)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void semanticCacheSimilarity(String path, double similarity) {
+        DistributionSummary.builder("rag.semantic.cache.similarity")
+                .description("语义缓存最相似候选的相似度")
+                .tag("path", path)
+                .serviceLevelObjectives(0.8, 0.85, 0.9, 0.92, 0.95, 0.98)
+                .register(meterRegistry)
+                .record(similarity);
+    }
+
+    public void retrievalLeg(String leg, HybridSearchExecutor.LegTiming timing) {
+        Timer.builder("rag.retrieval.leg")
+                .description("向量/全文检索单路耗时")
+                .tag("leg", leg)
+                .tag("status", timing.status().name())
+                .register(meterRegistry)
+                .record(timing.millis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void parentAssembly(long startNanos) {
+        timer("rag.retrieval.parent.assembly", "父块分组与批量加载耗时")
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void retrieval(long startNanos) {
+        timer("rag.retrieval", "父文档混合检索总耗时")
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void llmGeneration(String mode, long startNanos, TokenUsage tokenUsage) {
+        Timer.builder("rag.llm.generation")
+                .description("大模型生成耗时")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (tokenUsage == null) {
+            return;
+        }
+        if (tokenUsage.inputTokenCount() != null) {
+            tokens("prompt").increment(tokenUsage.inputTokenCount());
+        }
+        if (tokenUsage.outputTokenCount() != null) {
+            tokens("completion").increment(tokenUsage.outputTokenCount());
+        }
+    }
+
+    public void ingestionStage(String stage, long startNanos) {
+        Timer.builder("rag.ingestion.stage")
+                .description("文档入库各阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    private Counter tokens(String type) {
+        return Counter.builder("rag.llm.tokens")
+                .description("大模型 token 数")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
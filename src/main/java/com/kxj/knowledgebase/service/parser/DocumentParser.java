@@ -1,6 +1,9 @@
 package com.kxj.knowledgebase.service.parser;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * 文档解析器接口
@@ -16,6 +19,23 @@ public interface DocumentParser {
      */
     ParseResult parse(InputStream inputStream, String fileName);
 
+    /**
+     * 从本地文件解析文档
+     * <p>
+     * 默认以流方式读取；支持随机访问的格式（如 PDF）可覆盖此方法，避免将整个文件读入内存。
+     *
+     * @param file     本地文件
+     * @param fileName 文件名（用于日志和元数据）
+     * @return 解析结果
+     */
+    default ParseResult parse(Path file, String fileName) {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return parse(inputStream, fileName);
+        } catch (IOException e) {
+            return ParseResult.error("读取文件失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取支持的文件扩展名
      *
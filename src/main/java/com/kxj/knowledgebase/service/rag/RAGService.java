@@ -1,8 +1,15 @@
 package com.kxj.knowledgebase.service.rag;
 
 import com.kxj.knowledgebase.dto.ChatMessage;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.model.output.Response;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,8 +24,12 @@ import java.util.List;
 @RequiredArgsConstructor
 public class RAGService {
 
+    private final RagMetrics ragMetrics;
+
     private ChatLanguageModel chatModel;
 
+    private StreamingChatLanguageModel streamingChatModel;
+
     @Value("${langchain4j.ollama.base-url}")
     private String baseUrl;
 
@@ -40,6 +51,12 @@ public class RAGService {
                 .temperature(temperature)
                 .timeout(timeout)
                 .build();
+        this.streamingChatModel = OllamaStreamingChatModel.builder()
+                .baseUrl(baseUrl)
+                .modelName(modelName)
+                .temperature(temperature)
+                .timeout(timeout)
+                .build();
     }
 
     public String answer(String question, String context) {
@@ -48,7 +65,7 @@ public class RAGService {
         String prompt = buildPrompt(question, context);
 
         log.info("[调用大模型生成回答]");
-        String answer = chatModel.generate(prompt);
+        String answer = generate(prompt);
 
         log.info("[RAG问答完成，回答长度: {}]", answer.length());
         return answer;
@@ -60,12 +77,52 @@ public class RAGService {
         String prompt = buildPromptWithContext(question, context, history);
 
         log.info("[调用大模型生成回答]");
-        String answer = chatModel.generate(prompt);
+        String answer = generate(prompt);
 
         log.info("[多轮RAG问答完成，回答长度: {}]", answer.length());
         return answer;
     }
 
+    /**
+     * 流式多轮问答：token 生成后立即回调，结束时回调完整回答
+     */
+    public void streamAnswerWithContext(String question, String context, List<ChatMessage> history,
+                                        StreamingResponseHandler<AiMessage> handler) {
+        log.info("[开始流式多轮RAG问答，question: {}, historySize: {}]", question, history.size());
+
+        String prompt = buildPromptWithContext(question, context, history);
+
+        log.info("[调用大模型流式生成回答]");
+        long startTime = System.nanoTime();
+        streamingChatModel.generate(prompt, new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+                handler.onNext(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                ragMetrics.llmGeneration("stream", startTime, response.tokenUsage());
+                handler.onComplete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                handler.onError(error);
+            }
+        });
+    }
+
+    /**
+     * 非流式生成，记录耗时与 token 用量
+     */
+    private String generate(String prompt) {
+        long startTime = System.nanoTime();
+        Response<AiMessage> response = chatModel.generate(UserMessage.from(prompt));
+        ragMetrics.llmGeneration("blocking", startTime, response.tokenUsage());
+        return response.content().text();
+    }
+
     private String buildPrompt(String question, String context) {
         return "你是一个智能助手，请根据以下提供的文档内容回答用户的问题。\n\n" +
                 "文档内容中的【数字】标记表示不同的来源段落，回答时请在相关观点后标注来源，如[1]、[2]。\n\n" +
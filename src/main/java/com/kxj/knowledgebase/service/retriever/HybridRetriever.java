@@ -3,8 +3,10 @@ package com.kxj.knowledgebase.service.retriever;
 import com.kxj.knowledgebase.config.RetrievalProperties;
 import com.kxj.knowledgebase.dto.SearchResult;
 import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.repository.ChunkHitView;
 import com.kxj.knowledgebase.repository.DocumentChunkRepository;
 import com.kxj.knowledgebase.repository.FullTextSearchResult;
+import com.kxj.knowledgebase.service.cache.SynonymNormalizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -21,12 +23,18 @@ public class HybridRetriever {
 
     private final DocumentChunkRepository chunkRepository;
     private final RetrievalProperties retrievalProperties;
+    private final HybridSearchExecutor hybridSearchExecutor;
+    private final SynonymNormalizer synonymNormalizer;
+    private final VectorSearchTuner vectorSearchTuner;
 
     public List<SearchResult> retrieve(String query, float[] queryEmbedding, int topK) {
         log.info("[开始混合检索，query: {}, topK: {}]", query, topK);
 
-        List<SearchResult> vectorResults = vectorSearch(queryEmbedding, topK);
-        List<SearchResult> textResults = fullTextSearch(query, topK);
+        HybridSearchExecutor.HybridLegs<SearchResult, SearchResult> legs = hybridSearchExecutor.execute(
+                () -> vectorSearch(queryEmbedding, topK),
+                () -> fullTextSearch(query, topK));
+        List<SearchResult> vectorResults = legs.vectorResults();
+        List<SearchResult> textResults = legs.textResults();
 
         log.info("[向量检索结果: {}]", vectorResults);
         log.info("[全文检索结果: {}]", textResults);
@@ -40,9 +48,10 @@ public class HybridRetriever {
     private List<SearchResult> vectorSearch(float[] queryEmbedding, int topK) {
         log.info("[执行向量检索]");
         String embeddingString = floatArrayToString(queryEmbedding);
-        List<DocumentChunk> chunks = chunkRepository.findNearestNeighbors(embeddingString, topK);
-        return chunks.stream()
-            .map(chunk -> new SearchResult(chunk, 1.0, "vector"))
+        List<ChunkHitView> hits = vectorSearchTuner.execute(null, retrievalProperties.getVectorTimeout(),
+            () -> chunkRepository.findNearestChildHits(embeddingString, topK));
+        return hits.stream()
+            .map(hit -> new SearchResult(hit.toDocumentChunk(), hit.getScore(), "vector"))
             .collect(Collectors.toList());
     }
 
@@ -50,7 +59,9 @@ public class HybridRetriever {
         log.info("[执行全文检索，query: {}]", query);
 
         try {
-            List<FullTextSearchResult> results = chunkRepository.fullTextSearch(query, topK);
+            String searchQuery = synonymNormalizer.normalizeForSearch(query);
+            List<FullTextSearchResult> results = vectorSearchTuner.withStatementTimeout(retrievalProperties.getFulltextTimeout(),
+                () -> chunkRepository.fullTextSearch(searchQuery, topK));
 
             return results.stream()
                 .map(result -> {
@@ -63,7 +74,7 @@ public class HybridRetriever {
         }
     }
 
-    private List<SearchResult> mergeAndRank(List<SearchResult> vectorResults, 
+    List<SearchResult> mergeAndRank(List<SearchResult> vectorResults, 
                                            List<SearchResult> textResults, 
                                            int topK) {
         log.info("[合并并重排序结果]");
@@ -0,0 +1,147 @@
+package com.kxj.knowledgebase.service.retriever;
+
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 混合检索执行器
+ * <p>
+ * 向量检索与全文检索在虚拟线程上并发执行，各自有独立超时；
+ * 任一路超时或失败时降级为单路结果，两路都失败才抛出异常。
+ * 请求延迟由两路之和变为较慢的一路。
+ * <p>
+ * 各路耗时在检索线程内记录（从开始执行到返回），不受等待顺序影响；超时的一路记为从发出到放弃等待的时间。
+ * 超时后 cancel(true) 不会停止已发出的 SQL，各路须自行设置语句超时（见 {@link VectorSearchTuner}）。
+ * 语句超时管不到获取连接的等待：两路同时各占一个连接，连接池须按并发对话数的两倍配置，调用方也不应持有事务。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HybridSearchExecutor {
+
+    private final ExecutorService optimizedExecutorService;
+    private final RetrievalProperties retrievalProperties;
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 并发执行两路检索
+     *
+     * @param vectorLeg 向量检索
+     * @param textLeg   全文检索
+     * @return 两路结果及各自耗时
+     */
+    public <V, T> HybridLegs<V, T> execute(Supplier<List<V>> vectorLeg, Supplier<List<T>> textLeg) {
+        long startTime = System.nanoTime();
+
+        TimedLeg<V> vectorTimed = new TimedLeg<>(vectorLeg);
+        TimedLeg<T> textTimed = new TimedLeg<>(textLeg);
+        CompletableFuture<List<V>> vectorFuture = CompletableFuture.supplyAsync(vectorTimed, optimizedExecutorService);
+        CompletableFuture<List<T>> textFuture = CompletableFuture.supplyAsync(textTimed, optimizedExecutorService);
+
+        LegResult<V> vector = await("向量检索", vectorFuture, vectorTimed, retrievalProperties.getVectorTimeout(), startTime);
+        LegResult<T> text = await("全文检索", textFuture, textTimed, retrievalProperties.getFulltextTimeout(), startTime);
+
+        ragMetrics.retrievalLeg("vector", vector.timing());
+        ragMetrics.retrievalLeg("fulltext", text.timing());
+
+        if (vector.timing().status() != LegStatus.OK && text.timing().status() != LegStatus.OK) {
+            throw new IllegalStateException("向量检索与全文检索均失败", vector.error());
+        }
+
+        log.info("[混合检索耗时] 向量={}ms({}), 全文={}ms({}), 总计={}ms",
+                vector.timing().millis(), vector.timing().status(),
+                text.timing().millis(), text.timing().status(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+        return new HybridLegs<>(vector.results(), text.results(), vector.timing(), text.timing());
+    }
+
+    private <R> LegResult<R> await(String legName, CompletableFuture<List<R>> future, TimedLeg<R> timed,
+                                   Duration timeout, long startTime) {
+        // 超时从两路同时发出时开始计算，等待第一路时第二路也在执行
+        long remainingNanos = timeout.toNanos() - (System.nanoTime() - startTime);
+        try {
+            List<R> results = future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+            return new LegResult<>(results, new LegTiming(timed.elapsedMillis(startTime), LegStatus.OK), null);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("[{}超时，降级为单路检索] 超时={}ms", legName, timeout.toMillis());
+            return new LegResult<>(List.of(), new LegTiming(timed.elapsedMillis(startTime), LegStatus.TIMEOUT), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new LegResult<>(List.of(), new LegTiming(timed.elapsedMillis(startTime), LegStatus.FAILED), e);
+        } catch (ExecutionException e) {
+            log.warn("[{}失败，降级为单路检索] {}", legName, e.getCause().getMessage());
+            return new LegResult<>(List.of(), new LegTiming(timed.elapsedMillis(startTime), LegStatus.FAILED), e.getCause());
+        }
+    }
+
+    /**
+     * 在检索线程内记录单路的开始与结束时间
+     */
+    private static final class TimedLeg<R> implements Supplier<List<R>> {
+
+        private final Supplier<List<R>> leg;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        private TimedLeg(Supplier<List<R>> leg) {
+            this.leg = leg;
+        }
+
+        @Override
+        public List<R> get() {
+            startNanos = System.nanoTime();
+            try {
+                return leg.get();
+            } finally {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * 已结束时返回实际执行耗时；未开始或未结束（超时）时返回从发出到现在的时间
+         */
+        long elapsedMillis(long submittedNanos) {
+            long start = startNanos;
+            long end = endNanos;
+            if (start == 0 || end == 0) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(end - start);
+        }
+    }
+
+    private record LegResult<R>(List<R> results, LegTiming timing, Throwable error) {
+    }
+
+    public enum LegStatus {
+        OK, TIMEOUT, FAILED
+    }
+
+    /**
+     * 单路检索耗时（检索线程内的执行时间；超时时为从发出到放弃等待的时间）
+     */
+    public record LegTiming(long millis, LegStatus status) {
+    }
+
+    /**
+     * 两路检索结果
+     */
+    public record HybridLegs<V, T>(List<V> vectorResults, List<T> textResults,
+                                   LegTiming vectorTiming, LegTiming textTiming) {
+    }
+}
@@ -3,16 +3,26 @@ package com.kxj.knowledgebase.service.retriever;
 import com.kxj.knowledgebase.config.RetrievalProperties;
 import com.kxj.knowledgebase.dto.SearchResult;
 import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.repository.ChunkHitView;
 import com.kxj.knowledgebase.repository.DocumentChunkRepository;
-import com.kxj.knowledgebase.repository.FullTextSearchResult;
+import com.kxj.knowledgebase.repository.ParentHybridHitView;
+import com.kxj.knowledgebase.service.cache.ParentChunkCacheService;
+import com.kxj.knowledgebase.service.cache.SynonymNormalizer;
+import com.kxj.knowledgebase.service.metrics.RagMetrics;
+import com.kxj.knowledgebase.service.storage.ChildChunkLexicalIndex;
+import com.kxj.knowledgebase.service.storage.ChildChunkVectorIndex;
 import com.kxj.knowledgebase.util.StringUtils;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -26,6 +36,13 @@ public class ParentAwareHybridRetriever {
 
     private final DocumentChunkRepository chunkRepository;
     private final RetrievalProperties retrievalProperties;
+    private final ChildChunkVectorIndex childChunkVectorIndex;
+    private final ChildChunkLexicalIndex childChunkLexicalIndex;
+    private final ParentChunkCacheService parentChunkCacheService;
+    private final HybridSearchExecutor hybridSearchExecutor;
+    private final RagMetrics ragMetrics;
+    private final VectorSearchTuner vectorSearchTuner;
+    private final SynonymNormalizer synonymNormalizer;
 
     // 最大父块内容长度
     private static final int MAX_PARENT_CONTENT_LENGTH = 4000;
@@ -34,6 +51,7 @@ public class ParentAwareHybridRetriever {
     @Builder
     public static class RetrievalResult {
         private Long parentChunkId;
+        private Long documentId;
         private String parentContent;
         private String sectionTitle;
         private String pageRange;
@@ -64,12 +82,38 @@ public class ParentAwareHybridRetriever {
      * @return 父块列表
      */
     public List<RetrievalResult> retrieve(String query, float[] queryEmbedding, int childTopK, int maxParents) {
-        log.info("[父文档混合检索] query='{}', childTopK={}, maxParents={}", query, childTopK, maxParents);
+        return retrieve(query, queryEmbedding, childTopK, maxParents, null);
+    }
 
-        long startTime = System.currentTimeMillis();
+    /**
+     * 父文档感知的混合检索（指定检索模式）
+     *
+     * @param mode 检索模式，决定 pgvector 的 ef_search / 迭代扫描参数；为 null 时使用配置的默认模式
+     */
+    public List<RetrievalResult> retrieve(String query, float[] queryEmbedding, int childTopK, int maxParents,
+                                          RetrievalMode mode) {
+        RetrievalMode resolvedMode = vectorSearchTuner.resolve(mode);
+        log.info("[父文档混合检索] query='{}', childTopK={}, maxParents={}, mode={}",
+                query, childTopK, maxParents, resolvedMode);
+
+        long startTime = System.nanoTime();
+
+        // 进程内索引都未就绪时，由数据库函数一次完成检索、融合与父块关联
+        // PostgreSQL 全文检索的查询需去除标点、停用词与语气词（数据库侧不再处理）
+        if (retrievalProperties.isServerSideHybridEnabled()
+                && !childChunkVectorIndex.isReady() && !childChunkLexicalIndex.isReady()) {
+            List<RetrievalResult> results = serverSideRetrieve(synonymNormalizer.normalizeForSearch(query),
+                    queryEmbedding, childTopK, maxParents, resolvedMode);
+            if (results != null) {
+                ragMetrics.retrieval(startTime);
+                long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                log.info("[父文档混合检索完成（服务端）] {} 个父块, 耗时 {}ms", results.size(), duration);
+                return results;
+            }
+        }
 
         // 1. 混合检索子块（向量 + 全文）
-        List<SearchResult> hybridResults = performHybridSearch(query, queryEmbedding, childTopK);
+        List<SearchResult> hybridResults = performHybridSearch(query, queryEmbedding, childTopK, resolvedMode);
         log.info("[混合检索到 {} 个子块]", hybridResults.size());
 
         if (hybridResults.isEmpty()) {
@@ -77,44 +121,110 @@ public class ParentAwareHybridRetriever {
         }
 
         // 2. 按父块分组并组装结果
+        long assemblyStart = System.nanoTime();
         List<RetrievalResult> results = assembleParentResults(hybridResults, maxParents);
+        ragMetrics.parentAssembly(assemblyStart);
+        ragMetrics.retrieval(startTime);
 
-        long duration = System.currentTimeMillis() - startTime;
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
         log.info("[父文档混合检索完成] {} 个父块, 耗时 {}ms", results.size(), duration);
 
         return results;
     }
 
     /**
-     * 执行混合检索（只检索子块）
+     * 服务端混合检索：调用 parent_aware_hybrid_search，一次往返返回父块及其命中子块
+     * <p>
+     * 一次调用同时完成向量与全文检索，语句超时取两路超时中较大的一个，超时后同样回退
+     *
+     * @param query 已预处理的全文检索查询
+     * @return 检索结果；数据库调用失败或超时时返回 null，由调用方回退到两路并发检索
      */
-    private List<SearchResult> performHybridSearch(String query, float[] queryEmbedding, int topK) {
-        String embeddingStr = StringUtils.floatArrayToString(queryEmbedding);
+    private List<RetrievalResult> serverSideRetrieve(String query, float[] queryEmbedding, int childTopK, int maxParents,
+                                                     RetrievalMode mode) {
+        long start = System.nanoTime();
+        List<ParentHybridHitView> rows;
+        Duration timeout = retrievalProperties.getVectorTimeout().compareTo(retrievalProperties.getFulltextTimeout()) >= 0
+                ? retrievalProperties.getVectorTimeout() : retrievalProperties.getFulltextTimeout();
+        try {
+            rows = vectorSearchTuner.execute(mode, timeout, () -> chunkRepository.parentAwareHybridSearch(
+                    query, StringUtils.floatArrayToString(queryEmbedding), childTopK, maxParents,
+                    retrievalProperties.getTextWeight(), retrievalProperties.getVectorWeight()));
+        } catch (DataAccessException e) {
+            boolean timedOut = e instanceof QueryTimeoutException;
+            log.warn("[服务端混合检索{}，回退到两路检索]: {}", timedOut ? "超时" : "失败", e.getMessage());
+            ragMetrics.retrievalLeg("server", new HybridSearchExecutor.LegTiming(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    timedOut ? HybridSearchExecutor.LegStatus.TIMEOUT : HybridSearchExecutor.LegStatus.FAILED));
+            return null;
+        }
+        ragMetrics.retrievalLeg("server", new HybridSearchExecutor.LegTiming(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), HybridSearchExecutor.LegStatus.OK));
 
-        // 向量检索 - 只查子块
-        List<DocumentChunk> vectorChunks = chunkRepository.findNearestChildChunks(embeddingStr, topK);
-        log.info("[向量检索] 返回 {} 个子块", vectorChunks.size());
-        vectorChunks.forEach(c -> log.debug("  向量 chunk#{} docId={} content={}...",
-                c.getChunkIndex(), c.getDocumentId(),
-                c.getContent().substring(0, Math.min(50, c.getContent().length()))));
+        // 行已按父块分数、子块分数排序，同一父块的行相邻
+        Map<Long, List<ParentHybridHitView>> byParent = rows.stream()
+                .collect(Collectors.groupingBy(ParentHybridHitView::getParentChunkId, LinkedHashMap::new, Collectors.toList()));
+        log.info("[服务端混合检索] {} 个子块, {} 个父块", rows.size(), byParent.size());
 
-        Map<Long, SearchResult> vectorResults = vectorChunks.stream()
+        List<RetrievalResult> results = new ArrayList<>();
+        for (List<ParentHybridHitView> children : byParent.values()) {
+            ParentHybridHitView parent = children.get(0);
+
+            List<ChildMatch> childMatches = children.stream()
+                    .map(r -> ChildMatch.builder()
+                            .childChunkId(r.getChildChunkId())
+                            .chunkIndex(r.getChildChunkIndex())
+                            .content(r.getChildContent())
+                            .matchScore(r.getChildScore())
+                            .matchType(r.getMatchType())
+                            .build())
+                    .collect(Collectors.toList());
+
+            results.add(RetrievalResult.builder()
+                    .parentChunkId(parent.getParentChunkId())
+                    .documentId(parent.getDocumentId())
+                    .parentContent(truncateParentContent(parent.getParentContent()))
+                    .sectionTitle(parent.getSectionTitle())
+                    .pageRange(parent.getPageRange())
+                    .relevanceScore(parent.getParentScore())
+                    .matchedChildren(childMatches)
+                    .sourceDocument(parent.getHeadingsPath())
+                    .sourceType(determineSourceType(children.stream().map(ParentHybridHitView::getMatchType).toList()))
+                    .build());
+        }
+        return results;
+    }
+
+    /**
+     * 执行混合检索（只检索子块）
+     *
+     * @param query 原始查询（只在 PostgreSQL 全文检索路径上做停用词处理）
+     */
+    private List<SearchResult> performHybridSearch(String query, float[] queryEmbedding, int topK, RetrievalMode mode) {
+        // 向量检索与全文检索并发执行（只查子块）
+        HybridSearchExecutor.HybridLegs<ChunkHitView, SearchResult> legs = hybridSearchExecutor.execute(
+                () -> vectorSearchChildChunks(queryEmbedding, topK, mode),
+                () -> textSearchChildChunks(query, topK));
+
+        List<ChunkHitView> vectorHits = legs.vectorResults();
+        log.info("[向量检索] 返回 {} 个子块", vectorHits.size());
+        vectorHits.forEach(h -> log.debug("  向量 chunk#{} docId={} score={} content={}...",
+                h.getChunkIndex(), h.getDocumentId(), h.getScore(),
+                h.getContent().substring(0, Math.min(50, h.getContent().length()))));
+
+        Map<Long, SearchResult> vectorResults = vectorHits.stream()
                 .collect(Collectors.toMap(
-                        DocumentChunk::getId,
-                        chunk -> new SearchResult(chunk, 1.0, "vector")
+                        ChunkHitView::getId,
+                        hit -> new SearchResult(hit.toDocumentChunk(), hit.getScore(), "vector")
                 ));
 
-        // 全文检索 - 只查子块
-        List<FullTextSearchResult> fullTextResults = chunkRepository.fullTextSearch(query, topK);
+        List<SearchResult> fullTextResults = legs.textResults();
         log.info("[全文检索] 返回 {} 个子块", fullTextResults.size());
         fullTextResults.forEach(r -> log.debug("  全文 chunk_id={} rank={}",
-                r.getChunk_id(), r.getRank()));
+                r.getChunk().getId(), r.getRank()));
 
         Map<Long, SearchResult> textResults = fullTextResults.stream()
-                .collect(Collectors.toMap(
-                        FullTextSearchResult::getChunk_id,
-                        result -> new SearchResult(result.toDocumentChunk(), 1.0, "fulltext", result.getRank())
-                ));
+                .collect(Collectors.toMap(r -> r.getChunk().getId(), r -> r));
 
         // 混合排序
         List<SearchResult> merged = mergeAndRank(vectorResults, textResults, topK);
@@ -125,10 +235,69 @@ public class ParentAwareHybridRetriever {
         return merged;
     }
 
+    /**
+     * 子块向量检索：内存索引就绪时在 JVM 内检索、按ID回表读取内容，否则走 pgvector
+     * 两条路径都只读取投影列（不传输向量、元数据），分数为余弦相似度；pgvector 路径按检索模式设置 ef_search
+     */
+    private List<ChunkHitView> vectorSearchChildChunks(float[] queryEmbedding, int topK, RetrievalMode mode) {
+        String embedding = StringUtils.floatArrayToString(queryEmbedding);
+        if (!childChunkVectorIndex.isReady()) {
+            return vectorSearchTuner.execute(mode, retrievalProperties.getVectorTimeout(),
+                    () -> chunkRepository.findNearestChildHits(embedding, topK));
+        }
+
+        List<Long> ids = childChunkVectorIndex.search(queryEmbedding, topK).stream()
+                .map(ChildChunkVectorIndex.ScoredChunk::chunkId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // 按索引返回的相似度顺序重排（已删除的子块自然被过滤）
+        Map<Long, ChunkHitView> byId = vectorSearchTuner.withStatementTimeout(retrievalProperties.getVectorTimeout(),
+                        () -> chunkRepository.findHitsByIds(embedding, ids)).stream()
+                .collect(Collectors.toMap(ChunkHitView::getId, h -> h));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * 子块全文检索：词法索引就绪时在 JVM 内做 BM25 打分、按ID回表读取内容，否则走 PostgreSQL 全文检索
+     * BM25 分数按本次最高分归一化到 (0, 1]，作为 rank 参与混合评分
+     * BM25 使用原始查询：分词器已丢弃标点，高频词由 IDF 自然降权；删除停用词会拆散相邻汉字构成的二元组
+     */
+    private List<SearchResult> textSearchChildChunks(String query, int topK) {
+        if (!childChunkLexicalIndex.isReady()) {
+            String searchQuery = synonymNormalizer.normalizeForSearch(query);
+            return vectorSearchTuner.withStatementTimeout(retrievalProperties.getFulltextTimeout(),
+                            () -> chunkRepository.fullTextSearch(searchQuery, topK)).stream()
+                    .map(r -> new SearchResult(r.toDocumentChunk(), 1.0, "fulltext", r.getRank()))
+                    .toList();
+        }
+
+        List<ChildChunkLexicalIndex.ScoredChunk> scored = childChunkLexicalIndex.search(query, topK);
+        if (scored.isEmpty()) {
+            return List.of();
+        }
+        double maxScore = scored.get(0).score();
+
+        List<Long> ids = scored.stream().map(ChildChunkLexicalIndex.ScoredChunk::chunkId).toList();
+        Map<Long, ChunkHitView> byId = vectorSearchTuner.withStatementTimeout(retrievalProperties.getFulltextTimeout(),
+                        () -> chunkRepository.findTextHitsByIds(ids)).stream()
+                .collect(Collectors.toMap(ChunkHitView::getId, h -> h));
+        return scored.stream()
+                .filter(s -> byId.containsKey(s.chunkId()))
+                .map(s -> new SearchResult(byId.get(s.chunkId()).toDocumentChunk(), 1.0, "fulltext",
+                        (float) (s.score() / maxScore)))
+                .toList();
+    }
+
     /**
      * 合并向量检索和全文检索结果
      */
-    private List<SearchResult> mergeAndRank(Map<Long, SearchResult> vectorResults,
+    List<SearchResult> mergeAndRank(Map<Long, SearchResult> vectorResults,
                                             Map<Long, SearchResult> textResults,
                                             int topK) {
         Map<Long, SearchResult> mergedMap = new HashMap<>(vectorResults);
@@ -185,31 +354,28 @@ public class ParentAwareHybridRetriever {
             log.debug("  父块ID={}: {} 个子块", parentId, children.size());
         });
 
-        List<RetrievalResult> results = new ArrayList<>();
+        // 先按综合分数排序并截取前 maxParents 个父块，再批量加载
+        List<Map.Entry<Long, List<SearchResult>>> topGroups = parentGroups.entrySet().stream()
+                .sorted(Comparator.comparingDouble(
+                        (Map.Entry<Long, List<SearchResult>> e) -> averageScore(e.getValue())).reversed())
+                .limit(maxParents)
+                .toList();
 
-        for (Map.Entry<Long, List<SearchResult>> entry : parentGroups.entrySet()) {
-            if (results.size() >= maxParents) {
-                break;
-            }
+        Map<Long, ParentChunkCacheService.ParentBlock> parents = parentChunkCacheService.getAll(
+                topGroups.stream().map(Map.Entry::getKey).toList());
+
+        List<RetrievalResult> results = new ArrayList<>();
 
+        for (Map.Entry<Long, List<SearchResult>> entry : topGroups) {
             Long parentId = entry.getKey();
             List<SearchResult> matchedChildren = entry.getValue();
 
-            // 加载父块
-            Optional<DocumentChunk> parentOpt = chunkRepository.findById(parentId);
-            if (parentOpt.isEmpty()) {
+            ParentChunkCacheService.ParentBlock parent = parents.get(parentId);
+            if (parent == null) {
                 log.warn("[父块不存在: {}]", parentId);
                 continue;
             }
 
-            DocumentChunk parent = parentOpt.get();
-
-            // 计算综合分数
-            double avgScore = matchedChildren.stream()
-                    .mapToDouble(SearchResult::getScore)
-                    .average()
-                    .orElse(0.0);
-
             // 构建子块匹配信息
             List<ChildMatch> childMatches = matchedChildren.stream()
                     .map(r -> ChildMatch.builder()
@@ -222,33 +388,45 @@ public class ParentAwareHybridRetriever {
                             .build())
                     .collect(Collectors.toList());
 
-            // 截取父块内容
-            String parentContent = parent.getContent();
-            if (parentContent.length() > MAX_PARENT_CONTENT_LENGTH) {
-                parentContent = parentContent.substring(0, MAX_PARENT_CONTENT_LENGTH) + "...";
-            }
-
             results.add(RetrievalResult.builder()
                     .parentChunkId(parentId)
-                    .parentContent(parentContent)
-                    .sectionTitle(parent.getSectionTitle())
-                    .pageRange(parent.getPageRange())
-                    .relevanceScore(avgScore)
+                    .documentId(parent.documentId())
+                    .parentContent(truncateParentContent(parent.content()))
+                    .sectionTitle(parent.sectionTitle())
+                    .pageRange(parent.pageRange())
+                    .relevanceScore(averageScore(matchedChildren))
                     .matchedChildren(childMatches)
-                    .sourceDocument(parent.getHeadingsPath())
-                    .sourceType(determineSourceType(matchedChildren))
+                    .sourceDocument(parent.headingsPath())
+                    .sourceType(determineSourceType(matchedChildren.stream().map(SearchResult::getSource).toList()))
                     .build());
         }
 
-        // 按相关性排序
-        results.sort((a, b) -> Double.compare(b.getRelevanceScore(), a.getRelevanceScore()));
-
         return results;
     }
 
-    private String determineSourceType(List<SearchResult> children) {
-        boolean hasVector = children.stream().anyMatch(c -> "vector".equals(c.getSource()) || "hybrid".equals(c.getSource()));
-        boolean hasFullText = children.stream().anyMatch(c -> "fulltext".equals(c.getSource()) || "hybrid".equals(c.getSource()));
+    /**
+     * 父块综合分数：命中子块的平均分
+     */
+    private double averageScore(List<SearchResult> children) {
+        return children.stream()
+                .mapToDouble(SearchResult::getScore)
+                .average()
+                .orElse(0.0);
+    }
+
+    /**
+     * 截取父块内容
+     */
+    private String truncateParentContent(String parentContent) {
+        if (parentContent.length() > MAX_PARENT_CONTENT_LENGTH) {
+            return parentContent.substring(0, MAX_PARENT_CONTENT_LENGTH) + "...";
+        }
+        return parentContent;
+    }
+
+    private String determineSourceType(List<String> childSources) {
+        boolean hasVector = childSources.stream().anyMatch(s -> "vector".equals(s) || "hybrid".equals(s));
+        boolean hasFullText = childSources.stream().anyMatch(s -> "fulltext".equals(s) || "hybrid".equals(s));
 
         if (hasVector && hasFullText) return "hybrid";
         if (hasVector) return "vector";
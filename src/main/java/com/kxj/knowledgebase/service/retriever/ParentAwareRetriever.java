@@ -2,7 +2,7 @@ package com.kxj.knowledgebase.service.retriever;
 
 import com.kxj.knowledgebase.entity.DocumentChunk;
 import com.kxj.knowledgebase.repository.DocumentChunkRepository;
-import com.kxj.knowledgebase.service.embedding.EmbeddingService;
+import com.kxj.knowledgebase.service.embedding.EmbeddingDispatcher;
 import com.kxj.knowledgebase.util.StringUtils;
 import lombok.Builder;
 import lombok.Data;
@@ -23,7 +23,7 @@ import java.util.stream.Collectors;
 public class ParentAwareRetriever {
 
     private final DocumentChunkRepository chunkRepository;
-    private final EmbeddingService embeddingService;
+    private final EmbeddingDispatcher embeddingDispatcher;
 
     // 最大父块内容长度（防止超出 LLM 上下文）
     private static final int MAX_PARENT_CONTENT_LENGTH = 4000;
@@ -69,7 +69,7 @@ public class ParentAwareRetriever {
         long startTime = System.currentTimeMillis();
 
         // 1. 向量化查询
-        float[] queryEmbedding = embeddingService.embed(query);
+        float[] queryEmbedding = embeddingDispatcher.embed(query);
         String embeddingStr = StringUtils.floatArrayToString(queryEmbedding);
 
         // 2. 检索子块（小粒度）
@@ -0,0 +1,23 @@
+package com.kxj.knowledgebase.service.retriever;
+
+/**
+ * 检索模式：在延迟与召回之间取舍
+ * 各模式对应的 pgvector 查询参数见 retrieval.search.latency / balanced / recall
+ */
+public enum RetrievalMode {
+
+    /**
+     * 低延迟：较小的 ef_search，不开启迭代扫描
+     */
+    LATENCY,
+
+    /**
+     * 默认
+     */
+    BALANCED,
+
+    /**
+     * 高召回：较大的 ef_search，迭代扫描直到凑满结果
+     */
+    RECALL
+}
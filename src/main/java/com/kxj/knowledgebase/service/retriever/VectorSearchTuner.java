@@ -0,0 +1,142 @@
+package com.kxj.knowledgebase.service.retriever;
+
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * pgvector 查询参数
+ * <p>
+ * hnsw.ef_search 等参数是会话级的，写在迁移脚本里只影响 Flyway 的连接。
+ * 这里在只读事务内通过 set_config(..., true)（等同 SET LOCAL）设置，再在同一事务（同一连接）中执行检索，
+ * 事务结束后参数自动恢复，不会污染连接池中的其他请求。
+ * 检索总是在独立的新事务中执行：检索失败不会把调用方事务标记为回滚，调用方可以安全降级。
+ * 调用方不应在持有事务时调用：新事务需要另取一个连接，外层事务的连接在检索期间一直空占，
+ * 并发请求多时会耗尽连接池，各请求在获取连接处相互等待直到超时。
+ * <p>
+ * 迭代扫描（hnsw.iterative_scan / hnsw.max_scan_tuples）需要 pgvector 0.8+，启动时检测扩展版本，低版本只设置 ef_search。
+ * <p>
+ * 混合检索的各路还会以同样方式设置 statement_timeout：调用方等待超时后 cancel(true) 只能中断等待线程，
+ * 停不下已发出的 SQL，由数据库按超时取消语句，连接才能及时归还连接池。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VectorSearchTuner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final RetrievalProperties retrievalProperties;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private volatile boolean iterativeScanSupported;
+
+    @PostConstruct
+    public void init() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction = template;
+
+        try {
+            List<String> versions = jdbcTemplate.queryForList(
+                    "SELECT extversion FROM pg_extension WHERE extname = 'vector'", String.class);
+            String version = versions.isEmpty() ? null : versions.get(0);
+            this.iterativeScanSupported = version != null && isAtLeast(version, 0, 8);
+            log.info("[pgvector 版本: {}, 迭代扫描: {}, 默认检索模式: {}]",
+                    version, iterativeScanSupported ? "支持" : "不支持", retrievalProperties.getMode());
+        } catch (DataAccessException e) {
+            log.warn("[检测 pgvector 版本失败，不启用迭代扫描]: {}", e.getMessage());
+            this.iterativeScanSupported = false;
+        }
+    }
+
+    /**
+     * 按检索模式设置事务级查询参数后执行检索
+     *
+     * @param mode  检索模式，为 null 时使用 retrieval.search.mode
+     * @param query 检索（须通过 JPA 仓库或 JdbcTemplate 访问数据库，以复用事务连接）
+     */
+    public <T> T execute(RetrievalMode mode, Supplier<T> query) {
+        return execute(mode, null, query);
+    }
+
+    /**
+     * 按检索模式设置事务级查询参数及语句超时后执行检索
+     *
+     * @param mode             检索模式，为 null 时使用 retrieval.search.mode
+     * @param statementTimeout 语句超时，为 null 时不设置
+     * @param query            检索（须通过 JPA 仓库或 JdbcTemplate 访问数据库，以复用事务连接）
+     */
+    public <T> T execute(RetrievalMode mode, Duration statementTimeout, Supplier<T> query) {
+        RetrievalProperties.SearchProfile profile = retrievalProperties.profile(resolve(mode));
+        return readOnlyTransaction.execute(status -> {
+            setStatementTimeout(statementTimeout);
+            setLocal("hnsw.ef_search", profile.getEfSearch());
+            if (iterativeScanSupported && profile.getIterativeScan() != null) {
+                setLocal("hnsw.iterative_scan", profile.getIterativeScan());
+                if (profile.getMaxScanTuples() > 0) {
+                    setLocal("hnsw.max_scan_tuples", profile.getMaxScanTuples());
+                }
+            }
+            return query.get();
+        });
+    }
+
+    /**
+     * 仅设置语句超时后执行查询（用于不涉及向量索引的检索，如全文检索）
+     *
+     * @param statementTimeout 语句超时
+     * @param query            查询（须通过 JPA 仓库或 JdbcTemplate 访问数据库，以复用事务连接）
+     */
+    public <T> T withStatementTimeout(Duration statementTimeout, Supplier<T> query) {
+        return readOnlyTransaction.execute(status -> {
+            setStatementTimeout(statementTimeout);
+            return query.get();
+        });
+    }
+
+    /**
+     * 请求未指定模式时使用配置的默认模式
+     */
+    public RetrievalMode resolve(RetrievalMode mode) {
+        return mode != null ? mode : retrievalProperties.getMode();
+    }
+
+    private void setStatementTimeout(Duration timeout) {
+        if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+            // statement_timeout 单位为毫秒，0 表示不限制，因此至少取 1ms
+            setLocal("statement_timeout", Math.max(1, timeout.toMillis()));
+        }
+    }
+
+    private void setLocal(String name, Object value) {
+        jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class, name, String.valueOf(value));
+    }
+
+    /**
+     * 比较扩展版本号（形如 0.8.0）
+     */
+    static boolean isAtLeast(String version, int major, int minor) {
+        String[] parts = version.split("\\.");
+        try {
+            int actualMajor = Integer.parseInt(parts[0]);
+            int actualMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return actualMajor > major || (actualMajor == major && actualMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
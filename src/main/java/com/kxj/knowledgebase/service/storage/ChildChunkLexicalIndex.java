@@ -0,0 +1,387 @@
+package com.kxj.knowledgebase.service.storage;
+
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.repository.ChunkContentView;
+import com.kxj.knowledgebase.repository.DocumentChunkRepository;
+import com.kxj.knowledgebase.util.CjkBigramTokenizer;
+import com.kxj.knowledgebase.util.PostingsList;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 子块文本的进程内 BM25 倒排索引
+ *
+ * <p>PostgreSQL 的 to_tsvector('simple', ...) 不做中文切分，整段中文成为一个词位，全文检索几乎无法命中。
+ * 这里用 {@link CjkBigramTokenizer}（单字 + 二元组）切分子块（chunk_level = 1）文本，在 JVM 内完成 BM25 打分，
+ * 只返回 chunkId + 分数，PostgreSQL 仅负责按 ID 读取内容。
+ *
+ * <p>存储结构：
+ * <ul>
+ *     <li>每个子块分配递增的内部序号，倒排表（{@link PostingsList}）按序号升序存放 (序号差值, 词频) 两个 varint，常见短倒排表每项 2~3 字节</li>
+ *     <li>删除只在位图中打墓碑，检索时跳过；墓碑超过序号总数的 {@link #COMPACT_RATIO} 时重写倒排表并重新编号</li>
+ * </ul>
+ *
+ * <p>生命周期与 {@link ChildChunkVectorIndex} 一致：启动时在虚拟线程上按 ID 游标分页加载，
+ * 加载完成前 {@link #isReady()} 为 false，调用方应回退到 PostgreSQL 全文检索；入库/删除在事务提交后同步到索引。
+ * 默认关闭，通过 retrieval.search.lexical-index-enabled 开启。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChildChunkLexicalIndex {
+
+    private final DocumentChunkRepository chunkRepository;
+    private final RetrievalProperties retrievalProperties;
+    private final ExecutorService optimizedExecutorService;
+
+    // BM25 参数（常用取值）
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // 启动加载时每页读取的子块数
+    private static final int LOAD_PAGE_SIZE = 2000;
+
+    // 墓碑占比超过该值且数量超过 COMPACT_MIN_TOMBSTONES 时压缩
+    private static final double COMPACT_RATIO = 0.2;
+    private static final int COMPACT_MIN_TOMBSTONES = 1000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 以下字段均由 lock 保护
+    private final Map<String, PostingsList> postings = new HashMap<>();
+    private final Map<Long, Integer> ordinalByChunkId = new HashMap<>();
+    // 文档ID -> 子块ID（删除文档时定位索引条目）
+    private final Map<Long, Set<Long>> chunkIdsByDocument = new HashMap<>();
+    private long[] chunkIds = new long[1024];
+    private int[] docLengths = new int[1024];
+    private BitSet tombstones = new BitSet();
+    private int ordinalCount;
+    private int tombstoneCount;
+    private int liveCount;
+    private long liveTokenCount;
+
+    private volatile boolean enabled = false;
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        if (!retrievalProperties.isLexicalIndexEnabled()) {
+            log.info("[子块内存词法索引未启用]");
+            return;
+        }
+        this.enabled = true;
+        optimizedExecutorService.submit(this::loadFromDatabase);
+    }
+
+    /**
+     * 从数据库分页加载全部子块文本
+     */
+    private void loadFromDatabase() {
+        long startTime = System.currentTimeMillis();
+        long lastId = 0;
+        int loaded = 0;
+
+        try {
+            while (true) {
+                List<ChunkContentView> page = chunkRepository.findChildContentsAfter(lastId, LOAD_PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lock.writeLock().lock();
+                try {
+                    for (ChunkContentView view : page) {
+                        add(view.getId(), view.getDocumentId(), view.getContent());
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                loaded += page.size();
+                lastId = page.get(page.size() - 1).getId();
+                log.debug("[子块内存词法索引加载中] 已加载 {} 条", loaded);
+            }
+
+            this.ready = true;
+            log.info("[子块内存词法索引加载完成] 条目数={}, 词项数={}, 倒排表{}KB, 耗时{}ms",
+                    liveCount, postings.size(), postingsBytes() / 1024, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("[子块内存词法索引加载失败，全文检索将继续使用 PostgreSQL]", e);
+        }
+    }
+
+    /**
+     * 仅启用空的内存索引（不从数据库加载），用于单元测试
+     */
+    void initInMemory() {
+        this.enabled = true;
+        this.ready = true;
+    }
+
+    /**
+     * 索引已启用且加载完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * BM25 检索
+     *
+     * @param query 查询文本
+     * @param topK  返回数量
+     * @return 按 BM25 分数降序排列的子块ID与分数
+     */
+    public List<ScoredChunk> search(String query, int topK) {
+        if (!ready || topK <= 0) {
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>(CjkBigramTokenizer.tokenize(query));
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return List.of();
+            }
+            double avgDocLength = (double) liveTokenCount / liveCount;
+
+            // 按序号累加分数：常见单字（的、是）的倒排表几乎覆盖全部子块，稠密数组避免逐条装箱
+            double[] scores = new double[ordinalCount];
+            for (String term : terms) {
+                PostingsList list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                // 墓碑压缩前 docFreq 仍包含已删除条目，按存活数截断
+                int docFreq = Math.min(list.docFreq(), liveCount);
+                double idf = Math.log(1 + (liveCount - docFreq + 0.5) / (docFreq + 0.5));
+
+                list.forEach((ordinal, tf) -> {
+                    if (tombstones.get(ordinal)) {
+                        return;
+                    }
+                    double norm = K1 * (1 - B + B * docLengths[ordinal] / avgDocLength);
+                    scores[ordinal] += idf * tf * (K1 + 1) / (tf + norm);
+                });
+            }
+
+            // 小顶堆取前 topK（BM25 各项均为正，分数为 0 即未命中）
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Comparator.comparingDouble(ordinal -> scores[ordinal]));
+            for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+                double score = scores[ordinal];
+                if (score <= 0) {
+                    continue;
+                }
+                if (heap.size() < topK) {
+                    heap.offer(ordinal);
+                } else if (score > scores[heap.peek()]) {
+                    heap.poll();
+                    heap.offer(ordinal);
+                }
+            }
+            return heap.stream()
+                    .sorted(Comparator.comparingDouble((Integer ordinal) -> scores[ordinal]).reversed())
+                    .map(ordinal -> new ScoredChunk(chunkIds[ordinal], scores[ordinal]))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 事务提交后将子块加入索引
+     */
+    public void onChunksSaved(List<DocumentChunk> chunks) {
+        if (!enabled) {
+            return;
+        }
+        List<DocumentChunk> children = chunks.stream()
+                .filter(c -> c.getId() != null && Integer.valueOf(1).equals(c.getChunkLevel()) && c.getContent() != null)
+                .toList();
+        if (children.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> write(() -> children.forEach(c -> add(c.getId(), c.getDocumentId(), c.getContent()))));
+    }
+
+    /**
+     * 事务提交后从索引中移除文档的所有子块
+     */
+    public void onDocumentDeleted(Long documentId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> write(() -> {
+            Set<Long> removed = chunkIdsByDocument.remove(documentId);
+            if (removed == null) {
+                return;
+            }
+            removed.forEach(this::remove);
+            log.info("[子块内存词法索引已移除文档 {} 的 {} 个子块]", documentId, removed.size());
+        }));
+    }
+
+    /**
+     * 事务提交后从索引中移除文档的部分子块（增量入库时已移除的 chunk）
+     */
+    public void onChunksDeleted(Long documentId, List<Long> chunkIds) {
+        if (!enabled || chunkIds.isEmpty()) {
+            return;
+        }
+        List<Long> removed = List.copyOf(chunkIds);
+        afterCommit(() -> write(() -> {
+            removed.forEach(this::remove);
+            Set<Long> documentChunkIds = chunkIdsByDocument.get(documentId);
+            if (documentChunkIds != null) {
+                removed.forEach(documentChunkIds::remove);
+            }
+        }));
+    }
+
+    /**
+     * 加入一个子块（调用方持有写锁）；已存在时先移除旧条目
+     */
+    private void add(Long chunkId, Long documentId, String content) {
+        remove(chunkId);
+
+        List<String> tokens = CjkBigramTokenizer.tokenize(content);
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String token : tokens) {
+            termFrequencies.merge(token, 1, Integer::sum);
+        }
+
+        int ordinal = ordinalCount++;
+        if (ordinal == chunkIds.length) {
+            chunkIds = Arrays.copyOf(chunkIds, chunkIds.length * 2);
+            docLengths = Arrays.copyOf(docLengths, docLengths.length * 2);
+        }
+        chunkIds[ordinal] = chunkId;
+        docLengths[ordinal] = tokens.size();
+        termFrequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new PostingsList()).append(ordinal, tf));
+
+        ordinalByChunkId.put(chunkId, ordinal);
+        chunkIdsByDocument.computeIfAbsent(documentId, k -> new HashSet<>()).add(chunkId);
+        liveCount++;
+        liveTokenCount += tokens.size();
+    }
+
+    /**
+     * 移除一个子块（调用方持有写锁）：只打墓碑，倒排表在压缩时重写
+     */
+    private void remove(Long chunkId) {
+        Integer ordinal = ordinalByChunkId.remove(chunkId);
+        if (ordinal == null) {
+            return;
+        }
+        tombstones.set(ordinal);
+        tombstoneCount++;
+        liveCount--;
+        liveTokenCount -= docLengths[ordinal];
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+            if (tombstoneCount >= COMPACT_MIN_TOMBSTONES && tombstoneCount > ordinalCount * COMPACT_RATIO) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 去掉墓碑条目并按存活条目重新编号（调用方持有写锁）
+     * 新序号随旧序号单调递增，倒排表重写后仍保持升序
+     */
+    private void compact() {
+        long startTime = System.currentTimeMillis();
+        int[] remap = new int[ordinalCount];
+        long[] newChunkIds = new long[Math.max(1024, liveCount * 2)];
+        int[] newDocLengths = new int[newChunkIds.length];
+        int next = 0;
+        for (int ordinal = 0; ordinal < ordinalCount; ordinal++) {
+            if (tombstones.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = next;
+                newChunkIds[next] = chunkIds[ordinal];
+                newDocLengths[next] = docLengths[ordinal];
+                ordinalByChunkId.put(chunkIds[ordinal], next);
+                next++;
+            }
+        }
+
+        postings.replaceAll((term, list) -> list.rewrite(remap));
+        postings.values().removeIf(list -> list.docFreq() == 0);
+
+        int removed = tombstoneCount;
+        chunkIds = newChunkIds;
+        docLengths = newDocLengths;
+        ordinalCount = next;
+        tombstones = new BitSet();
+        tombstoneCount = 0;
+        log.info("[子块内存词法索引压缩完成] 清理墓碑={}, 存活条目={}, 词项数={}, 耗时{}ms",
+                removed, liveCount, postings.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 尚未压缩的墓碑数，用于单元测试
+     */
+    int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return tombstoneCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long postingsBytes() {
+        lock.readLock().lock();
+        try {
+            return postings.values().stream().mapToLong(PostingsList::sizeInBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 检索结果：子块ID + BM25 分数
+     */
+    public record ScoredChunk(Long chunkId, double score) {
+    }
+}
@@ -0,0 +1,365 @@
+package com.kxj.knowledgebase.service.storage;
+
+import com.github.jelmerk.knn.Item;
+import com.github.jelmerk.knn.SearchResult;
+import com.github.jelmerk.knn.hnsw.HnswIndex;
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import com.kxj.knowledgebase.repository.ChunkEmbeddingView;
+import com.kxj.knowledgebase.repository.DocumentChunkRepository;
+import com.kxj.knowledgebase.util.UnitVectorDistance;
+import com.kxj.knowledgebase.util.VectorCodec;
+import com.kxj.knowledgebase.util.VectorMath;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Serial;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 子块向量的进程内 HNSW 索引
+ *
+ * <p>镜像 document_chunk 中所有子块（chunk_level = 1）的向量，向量检索在 JVM 内完成，
+ * 只返回 chunkId + 相似度，PostgreSQL 仅负责按 ID 读取内容。
+ *
+ * <p>生命周期：
+ * <ul>
+ *     <li>启动时在虚拟线程上按 ID 游标分页加载，加载完成前 {@link #isReady()} 为 false，调用方应回退到 pgvector</li>
+ *     <li>入库/删除通过 {@link VectorStoreService} 在事务提交后同步到索引</li>
+ * </ul>
+ *
+ * <p>内存占用约为 子块数 × 3KB（768 维 float32），默认关闭，通过 retrieval.search.in-memory-index-enabled 开启。
+ *
+ * <p>hnswlib 的删除只是打墓碑，被删节点仍占用 in-memory-index-max-elements 容量：条目携带单调递增的版本号，
+ * 墓碑累计到容量的 1/10 时用存活条目重建索引。任何一次添加失败（如容量耗尽）都会使索引不再可用，
+ * 调用方回退到 pgvector，避免新入库的子块在向量检索中静默缺失。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChildChunkVectorIndex {
+
+    private final DocumentChunkRepository chunkRepository;
+    private final RetrievalProperties retrievalProperties;
+    private final ExecutorService optimizedExecutorService;
+
+    // 向量维度（nomic-embed-text 输出 768 维）
+    private static final int VECTOR_DIMENSION = 768;
+
+    // HNSW 算法参数（与语义缓存索引保持一致）
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 200;
+    private static final int EF_SEARCH = 100;
+
+    // 启动加载时每页读取的子块数
+    private static final int LOAD_PAGE_SIZE = 2000;
+
+    // 墓碑达到容量的该比例时重建索引
+    private static final int REBUILD_TOMBSTONE_DIVISOR = 10;
+
+    // 重建时整体替换
+    private volatile HnswIndex<Long, float[], ChunkVector, Float> index;
+
+    // 文档ID -> 子块ID（删除文档时定位索引条目）
+    private final ConcurrentHashMap<Long, Set<Long>> chunkIdsByDocument = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    // 曾有子块添加失败：索引与数据库不一致，直到重启都不再使用
+    private volatile boolean failed = false;
+
+    // 条目/删除版本号：取当前时间戳且严格递增，保证删除后重新加入的子块版本号总是更大
+    private final AtomicLong versionClock = new AtomicLong();
+
+    // 自上次重建以来产生的墓碑数
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    // 增删持读锁并发执行，重建持写锁
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    public void init() {
+        if (!retrievalProperties.isInMemoryIndexEnabled()) {
+            log.info("[子块内存向量索引未启用]");
+            return;
+        }
+
+        this.index = newIndex();
+
+        optimizedExecutorService.submit(this::loadFromDatabase);
+    }
+
+    private HnswIndex<Long, float[], ChunkVector, Float> newIndex() {
+        return HnswIndex
+                .newBuilder(VECTOR_DIMENSION, UnitVectorDistance.INSTANCE,
+                        retrievalProperties.getInMemoryIndexMaxElements())
+                .withM(M)
+                .withEfConstruction(EF_CONSTRUCTION)
+                .withEf(EF_SEARCH)
+                .withRemoveEnabled()
+                .build();
+    }
+
+    /**
+     * 从数据库分页加载全部子块向量
+     */
+    private void loadFromDatabase() {
+        long startTime = System.currentTimeMillis();
+        long lastId = 0;
+        int loaded = 0;
+
+        try {
+            while (true) {
+                List<ChunkEmbeddingView> page = chunkRepository.findChildEmbeddingsAfter(lastId, LOAD_PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (ChunkEmbeddingView view : page) {
+                    if (!add(view.getId(), view.getDocumentId(), VectorCodec.decodeText(view.getEmbedding()))) {
+                        throw new IllegalStateException("子块 " + view.getId() + " 添加失败");
+                    }
+                }
+                loaded += page.size();
+                lastId = page.get(page.size() - 1).getId();
+                log.debug("[子块内存索引加载中] 已加载 {} 条", loaded);
+            }
+
+            this.ready = !failed;
+            log.info("[子块内存索引加载完成] 条目数={}, 耗时{}ms", index.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("[子块内存索引加载失败，向量检索将继续使用 pgvector]", e);
+        }
+    }
+
+    /**
+     * 索引已启用、加载完成且没有子块添加失败
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 近邻检索
+     *
+     * @param queryEmbedding 查询向量
+     * @param topK           返回数量
+     * @return 按相似度降序排列的子块ID与相似度
+     */
+    public List<ScoredChunk> search(float[] queryEmbedding, int topK) {
+        if (!ready || queryEmbedding.length != VECTOR_DIMENSION) {
+            return List.of();
+        }
+
+        List<SearchResult<ChunkVector, Float>> results = index.findNearest(VectorMath.normalize(queryEmbedding), topK);
+        return results.stream()
+                .map(r -> new ScoredChunk(r.item().id(), 1.0 - r.distance()))
+                .toList();
+    }
+
+    /**
+     * 事务提交后将子块加入索引
+     */
+    public void onChunksSaved(List<DocumentChunk> chunks) {
+        if (index == null) {
+            return;
+        }
+        List<DocumentChunk> children = chunks.stream()
+                .filter(c -> c.getId() != null && Integer.valueOf(1).equals(c.getChunkLevel()) && c.getEmbedding() != null)
+                .toList();
+        if (children.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> children.forEach(c ->
+                add(c.getId(), c.getDocumentId(), VectorCodec.decodeText(c.getEmbedding()))));
+    }
+
+    /**
+     * 事务提交后从索引中移除文档的所有子块
+     */
+    public void onDocumentDeleted(Long documentId) {
+        if (index == null) {
+            return;
+        }
+        afterCommit(() -> {
+            Set<Long> chunkIds = chunkIdsByDocument.remove(documentId);
+            if (chunkIds == null) {
+                return;
+            }
+            remove(chunkIds);
+            log.info("[子块内存索引已移除文档 {} 的 {} 个子块]", documentId, chunkIds.size());
+        });
+    }
+
+    /**
+     * 事务提交后从索引中移除文档的部分子块（增量入库时已移除的 chunk）
+     */
+    public void onChunksDeleted(Long documentId, List<Long> chunkIds) {
+        if (index == null || chunkIds.isEmpty()) {
+            return;
+        }
+        List<Long> removed = List.copyOf(chunkIds);
+        afterCommit(() -> {
+            remove(removed);
+            Set<Long> documentChunkIds = chunkIdsByDocument.get(documentId);
+            if (documentChunkIds != null) {
+                removed.forEach(documentChunkIds::remove);
+            }
+        });
+    }
+
+    /**
+     * 加入索引；失败时索引不再可用
+     *
+     * @return 是否加入成功（维度不符的向量跳过，视为成功）
+     */
+    private boolean add(Long chunkId, Long documentId, float[] vector) {
+        if (vector.length != VECTOR_DIMENSION) {
+            return true;
+        }
+        boolean added = false;
+        rebuildLock.readLock().lock();
+        try {
+            // 归一化后入索引，距离计算只需一次点积；覆盖已有条目时旧节点变为墓碑
+            boolean replacing = index.contains(chunkId);
+            added = index.add(new ChunkVector(chunkId, VectorMath.normalize(vector), nextVersion()));
+            if (added) {
+                if (replacing) {
+                    tombstones.incrementAndGet();
+                }
+                chunkIdsByDocument.computeIfAbsent(documentId, k -> ConcurrentHashMap.newKeySet()).add(chunkId);
+            } else {
+                log.error("[子块内存索引添加被拒绝，向量检索改用 pgvector] chunkId={}", chunkId);
+            }
+        } catch (Exception e) {
+            log.error("[子块内存索引添加失败，向量检索改用 pgvector] chunkId={}: {}", chunkId, e.getMessage());
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        if (!added) {
+            // 索引已与数据库不一致，继续使用会让该子块在向量检索中静默缺失
+            this.failed = true;
+            this.ready = false;
+            return false;
+        }
+        rebuildIfNeeded();
+        return true;
+    }
+
+    private void remove(Collection<Long> chunkIds) {
+        rebuildLock.readLock().lock();
+        try {
+            long version = nextVersion();
+            for (Long id : chunkIds) {
+                if (index.remove(id, version)) {
+                    tombstones.incrementAndGet();
+                }
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        rebuildIfNeeded();
+    }
+
+    /**
+     * 墓碑达到阈值时用存活条目重建索引，回收被删除节点占用的容量
+     */
+    private void rebuildIfNeeded() {
+        int threshold = retrievalProperties.getInMemoryIndexMaxElements() / REBUILD_TOMBSTONE_DIVISOR;
+        if (tombstones.get() < threshold) {
+            return;
+        }
+
+        rebuildLock.writeLock().lock();
+        try {
+            int removed = tombstones.get();
+            if (removed < threshold) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            HnswIndex<Long, float[], ChunkVector, Float> rebuilt = newIndex();
+            rebuilt.addAll(List.copyOf(index.items()));
+            this.index = rebuilt;
+            tombstones.set(0);
+            log.info("[子块内存索引已重建] 回收墓碑={}, 当前大小={}, 耗时{}ms",
+                    removed, rebuilt.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.warn("[子块内存索引重建失败] {}", e.getMessage());
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    private long nextVersion() {
+        long now = System.currentTimeMillis();
+        return versionClock.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 检索结果：子块ID + 余弦相似度
+     */
+    public record ScoredChunk(Long chunkId, double score) {
+    }
+
+    /**
+     * HNSW 索引条目
+     */
+    static class ChunkVector implements Item<Long, float[]> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Long id;
+        private final float[] vector;
+        private final long version;
+
+        ChunkVector(Long id, float[] vector, long version) {
+            this.id = id;
+            this.vector = vector;
+            this.version = version;
+        }
+
+        @Override
+        public Long id() {
+            return id;
+        }
+
+        @Override
+        public float[] vector() {
+            return vector;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public int dimensions() {
+            return vector.length;
+        }
+    }
+}
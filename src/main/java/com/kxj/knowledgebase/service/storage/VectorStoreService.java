@@ -4,10 +4,14 @@ import com.kxj.knowledgebase.entity.DocumentChunk;
 import com.kxj.knowledgebase.repository.DocumentChunkRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
@@ -16,19 +20,156 @@ import java.util.List;
 public class VectorStoreService {
 
     private final DocumentChunkRepository chunkRepository;
+    private final ChildChunkVectorIndex childChunkVectorIndex;
+    private final ChildChunkLexicalIndex childChunkLexicalIndex;
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String ALLOCATE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('document_chunk', 'id')) FROM generate_series(1, ?)";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO document_chunk (id, document_id, chunk_index, content, embedding, create_time, metadata,
+                token_count, section_title, page_number, page_range, headings_path, content_type, summary,
+                prev_chunk_id, next_chunk_id, total_chunks, parent_chunk_id, chunk_level, sub_chunk_count, content_hash)
+            VALUES (?, ?, ?, ?, CAST(? AS vector), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String FIND_HASHES_SQL =
+            "SELECT id, chunk_level, content_hash FROM document_chunk WHERE document_id = ? ORDER BY chunk_level, chunk_index";
+
+    private static final String DELETE_BY_IDS_SQL =
+            "DELETE FROM document_chunk WHERE document_id = ? AND id = ANY(?)";
+
+    // 保留的 chunk 只更新位置与关联字段，内容和向量不变
+    private static final String UPDATE_POSITION_SQL = """
+            UPDATE document_chunk SET chunk_index = ?, metadata = ?, section_title = ?, page_number = ?, page_range = ?,
+                headings_path = ?, prev_chunk_id = ?, next_chunk_id = ?, total_chunks = ?, parent_chunk_id = ?,
+                sub_chunk_count = ?
+            WHERE id = ?
+            """;
 
     @Transactional
     public void saveChunks(List<DocumentChunk> chunks) {
         log.info("[开始保存 {} 个文档片段到向量数据库]", chunks.size());
         chunkRepository.saveAll(chunks);
+        childChunkVectorIndex.onChunksSaved(chunks);
+        childChunkLexicalIndex.onChunksSaved(chunks);
         log.info("[文档片段保存完成]");
     }
 
+    /**
+     * 预分配 document_chunk 主键（一次往返取一段序列值）
+     * 预先拿到 ID 后，父子/相邻关系可以在写入前确定，每个 chunk 只需插入一次
+     */
+    public List<Long> allocateChunkIds(int count) {
+        return jdbcTemplate.queryForList(ALLOCATE_IDS_SQL, Long.class, count);
+    }
+
+    /**
+     * JDBC 批量插入（ID 已预分配）
+     * 连接串开启 reWriteBatchedInserts 后，驱动会将批次改写为多行 INSERT
+     */
+    @Transactional
+    public void insertChunks(List<DocumentChunk> chunks) {
+        long startTime = System.currentTimeMillis();
+        jdbcTemplate.batchUpdate(INSERT_SQL, chunks, chunks.size(), (ps, c) -> {
+            ps.setLong(1, c.getId());
+            ps.setLong(2, c.getDocumentId());
+            ps.setInt(3, c.getChunkIndex());
+            ps.setString(4, c.getContent());
+            ps.setString(5, c.getEmbedding());
+            ps.setObject(6, c.getCreateTime() != null ? c.getCreateTime() : LocalDateTime.now());
+            ps.setString(7, c.getMetadata());
+            ps.setObject(8, c.getTokenCount(), Types.INTEGER);
+            ps.setString(9, c.getSectionTitle());
+            ps.setObject(10, c.getPageNumber(), Types.INTEGER);
+            ps.setString(11, c.getPageRange());
+            ps.setString(12, c.getHeadingsPath());
+            ps.setString(13, c.getContentType());
+            ps.setString(14, c.getSummary());
+            ps.setObject(15, c.getPrevChunkId(), Types.BIGINT);
+            ps.setObject(16, c.getNextChunkId(), Types.BIGINT);
+            ps.setObject(17, c.getTotalChunks(), Types.INTEGER);
+            ps.setObject(18, c.getParentChunkId(), Types.BIGINT);
+            ps.setObject(19, c.getChunkLevel(), Types.INTEGER);
+            ps.setObject(20, c.getSubChunkCount(), Types.INTEGER);
+            ps.setString(21, c.getContentHash());
+        });
+        childChunkVectorIndex.onChunksSaved(chunks);
+        childChunkLexicalIndex.onChunksSaved(chunks);
+        log.info("[批量插入 {} 个文档片段完成，耗时{}ms]", chunks.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 读取文档现有 chunks 的主键与内容哈希（增量入库时比对）
+     */
+    public List<ChunkHash> findChunkHashes(Long documentId) {
+        return jdbcTemplate.query(FIND_HASHES_SQL,
+                (rs, rowNum) -> new ChunkHash(rs.getLong("id"), rs.getInt("chunk_level"), rs.getString("content_hash")),
+                documentId);
+    }
+
+    /**
+     * 在一个事务中应用文档新版本的 chunk 差异
+     * - 已移除的 chunks：一条 DELETE ... WHERE id = ANY(?) 删除
+     * - 保留的 chunks：只更新位置与关联字段，主键与向量不变
+     * - 新增/变化的 chunks：按批 JDBC 插入（ID 已预分配）
+     */
+    @Transactional
+    public void applyChunkChanges(Long documentId, List<DocumentChunk> kept, List<DocumentChunk> added,
+                                  List<Long> removedIds, int batchSize) {
+        long startTime = System.currentTimeMillis();
+
+        if (!removedIds.isEmpty()) {
+            int deleted = jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(DELETE_BY_IDS_SQL);
+                ps.setLong(1, documentId);
+                ps.setArray(2, con.createArrayOf("bigint", removedIds.toArray()));
+                return ps;
+            });
+            childChunkVectorIndex.onChunksDeleted(documentId, removedIds);
+            childChunkLexicalIndex.onChunksDeleted(documentId, removedIds);
+            log.info("[删除已移除的片段 {} 个]", deleted);
+        }
+
+        if (!kept.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_POSITION_SQL, kept, batchSize, (ps, c) -> {
+                ps.setInt(1, c.getChunkIndex());
+                ps.setString(2, c.getMetadata());
+                ps.setString(3, c.getSectionTitle());
+                ps.setObject(4, c.getPageNumber(), Types.INTEGER);
+                ps.setString(5, c.getPageRange());
+                ps.setString(6, c.getHeadingsPath());
+                ps.setObject(7, c.getPrevChunkId(), Types.BIGINT);
+                ps.setObject(8, c.getNextChunkId(), Types.BIGINT);
+                ps.setObject(9, c.getTotalChunks(), Types.INTEGER);
+                ps.setObject(10, c.getParentChunkId(), Types.BIGINT);
+                ps.setObject(11, c.getSubChunkCount(), Types.INTEGER);
+                ps.setLong(12, c.getId());
+            });
+        }
+
+        for (int i = 0; i < added.size(); i += batchSize) {
+            insertChunks(new ArrayList<>(added.subList(i, Math.min(i + batchSize, added.size()))));
+        }
+
+        log.info("[增量更新文档 {} 完成] 保留={}, 新增={}, 删除={}, 耗时{}ms",
+                documentId, kept.size(), added.size(), removedIds.size(), System.currentTimeMillis() - startTime);
+    }
+
     @Transactional
     public void deleteChunksByDocumentId(Long documentId) {
         log.info("[开始删除文档 {} 的所有片段]", documentId);
         chunkRepository.deleteByDocumentId(documentId);
+        childChunkVectorIndex.onDocumentDeleted(documentId);
+        childChunkLexicalIndex.onDocumentDeleted(documentId);
         log.info("[文档片段删除完成]");
     }
 
+    /**
+     * 已入库 chunk 的主键、层级与内容哈希
+     */
+    public record ChunkHash(Long id, int chunkLevel, String contentHash) {
+    }
+
 }
\ No newline at end of file
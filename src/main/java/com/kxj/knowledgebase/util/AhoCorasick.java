@@ -0,0 +1,156 @@
+package com.kxj.knowledgebase.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick 多模式匹配自动机（不可变，线程安全）
+ * <p>
+ * 一次扫描文本即可找出所有模式的出现位置，耗时与文本长度和命中数成正比，与词典大小无关。
+ * {@link #replace(String, String[])} 按“最左最长”规则替换：从左到右，同一起点取最长的命中，命中之间不重叠。
+ * <p>
+ * 同一个自动机可服务多种替换策略：替换表中为 null 的模式视为未启用，不参与匹配。
+ */
+public class AhoCorasick {
+
+    private final List<String> patterns;
+
+    // 状态转移：goto[state] 为 字符 -> 下一状态，未命中时沿 fail 回退
+    private final List<Map<Character, Integer>> transitions;
+    private final int[] fail;
+
+    // 以该状态结尾的模式（-1 表示无），以及沿 fail 链最近的带模式状态（-1 表示无）
+    private final int[] patternAt;
+    private final int[] outputLink;
+
+    private AhoCorasick(List<String> patterns, List<Map<Character, Integer>> transitions, int[] fail,
+                       int[] patternAt, int[] outputLink) {
+        this.patterns = patterns;
+        this.transitions = transitions;
+        this.fail = fail;
+        this.patternAt = patternAt;
+        this.outputLink = outputLink;
+    }
+
+    /**
+     * 编译模式列表，空串与重复模式被忽略（重复时保留第一个的下标）
+     */
+    public static AhoCorasick compile(List<String> patterns) {
+        List<Map<Character, Integer>> transitions = new ArrayList<>();
+        List<Integer> patternAtList = new ArrayList<>();
+        transitions.add(new HashMap<>());
+        patternAtList.add(-1);
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = transitions.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.get(state).put(pattern.charAt(i), next);
+                    transitions.add(new HashMap<>());
+                    patternAtList.add(-1);
+                }
+                state = next;
+            }
+            if (patternAtList.get(state) < 0) {
+                patternAtList.set(state, p);
+            }
+        }
+
+        int stateCount = transitions.size();
+        int[] patternAt = patternAtList.stream().mapToInt(Integer::intValue).toArray();
+        int[] fail = new int[stateCount];
+        int[] outputLink = new int[stateCount];
+        Arrays.fill(outputLink, -1);
+
+        // 按层（BFS）计算失败指针与输出链
+        Queue<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+                int f = fail[state];
+                while (f > 0 && !transitions.get(f).containsKey(c)) {
+                    f = fail[f];
+                }
+                Integer target = transitions.get(f).get(c);
+                fail[child] = target != null && target != child ? target : 0;
+                outputLink[child] = patternAt[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+
+        return new AhoCorasick(List.copyOf(patterns), transitions, fail, patternAt, outputLink);
+    }
+
+    public List<String> patterns() {
+        return patterns;
+    }
+
+    /**
+     * 最左最长替换
+     *
+     * @param text         输入文本
+     * @param replacements 与模式下标对应的替换文本；null 表示该模式不参与匹配，空串表示删除
+     * @return 替换后的文本
+     */
+    public String replace(String text, String[] replacements) {
+        int n = text.length();
+        // longestAt[start] = 以 start 为起点的最长已启用模式下标 + 1（0 表示无）
+        int[] longestAt = new int[n];
+        boolean matched = false;
+
+        int state = 0;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            Integer next;
+            while ((next = transitions.get(state).get(c)) == null && state > 0) {
+                state = fail[state];
+            }
+            state = next != null ? next : 0;
+
+            int s = patternAt[state] >= 0 ? state : outputLink[state];
+            while (s >= 0) {
+                int p = patternAt[s];
+                if (replacements[p] != null) {
+                    int start = i - patterns.get(p).length() + 1;
+                    int current = longestAt[start] - 1;
+                    if (current < 0 || patterns.get(current).length() < patterns.get(p).length()) {
+                        longestAt[start] = p + 1;
+                        matched = true;
+                    }
+                }
+                s = outputLink[s];
+            }
+        }
+
+        if (!matched) {
+            return text;
+        }
+
+        StringBuilder result = new StringBuilder(n);
+        int i = 0;
+        while (i < n) {
+            int p = longestAt[i] - 1;
+            if (p >= 0) {
+                result.append(replacements[p]);
+                i += patterns.get(p).length();
+            } else {
+                result.append(text.charAt(i));
+                i++;
+            }
+        }
+        return result.toString();
+    }
+}
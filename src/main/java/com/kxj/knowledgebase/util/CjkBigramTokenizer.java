@@ -0,0 +1,75 @@
+package com.kxj.knowledgebase.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 词法索引分词：中日韩文字按单字 + 相邻二元组切分，其他字母数字按连续片段切分
+ * <p>
+ * 不依赖词典：“知识库检索” → 知、识、库、检、索、知识、识库、库检、检索。
+ * 二元组保证短语匹配的精度，单字保证单字查询可召回（BM25 的 IDF 会压低高频单字的权重）。
+ * 文本先做 NFKC 规范化并转小写，全角/半角、大小写不同的写法得到相同的词项。
+ */
+public class CjkBigramTokenizer {
+
+    // 超长的字母数字片段（如 base64、哈希值）不入索引
+    private static final int MAX_WORD_LENGTH = 64;
+
+    /**
+     * 切分文本，返回词项序列（可重复，用于统计词频）
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>(normalized.length());
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+
+        int i = 0;
+        while (i < normalized.length()) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isCjk(cp)) {
+                flushWord(word, tokens);
+                tokens.add(Character.toString(cp));
+                if (previousCjk >= 0) {
+                    tokens.add(new StringBuilder(4).appendCodePoint(previousCjk).appendCodePoint(cp).toString());
+                }
+                previousCjk = cp;
+            } else if (Character.isLetterOrDigit(cp)) {
+                word.appendCodePoint(cp);
+                previousCjk = -1;
+            } else {
+                flushWord(word, tokens);
+                previousCjk = -1;
+            }
+        }
+        flushWord(word, tokens);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty() && word.length() <= MAX_WORD_LENGTH) {
+            tokens.add(word.toString());
+        }
+        word.setLength(0);
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private CjkBigramTokenizer() {
+        throw new UnsupportedOperationException("工具类不允许实例化");
+    }
+}
@@ -3,21 +3,44 @@ package com.kxj.knowledgebase.util;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class FileUtils {
 
     public static String calculateFileHash(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return calculateFileHash(in);
+        }
+    }
+
+    /**
+     * 流式计算文件哈希（不将整个文件读入内存）
+     */
+    public static String calculateFileHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return calculateFileHash(in);
+        }
+    }
+
+    private static String calculateFileHash(InputStream in) throws IOException {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] bytes = file.getBytes();
-            byte[] digest = md.digest(bytes);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+            byte[] digest = md.digest();
             StringBuilder sb = new StringBuilder();
             for (byte b : digest) {
                 sb.append(String.format("%02x", b));
             }
             return sb.toString();
-        } catch (Exception e) {
+        } catch (NoSuchAlgorithmException e) {
             throw new IOException("计算文件哈希失败", e);
         }
     }
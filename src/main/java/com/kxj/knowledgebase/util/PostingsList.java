@@ -0,0 +1,112 @@
+package com.kxj.knowledgebase.util;
+
+import java.util.Arrays;
+
+/**
+ * 单个词项的倒排表：按序号升序的 (序号差值, 词频) varint 序列
+ * <p>
+ * 每个 varint 低 7 位存数据、最高位表示后面还有字节，常见短倒排表每项 2~3 字节。
+ * 序号必须严格递增追加；非线程安全，由调用方加锁。
+ */
+public final class PostingsList {
+
+    private byte[] data = new byte[8];
+    private int size;
+    private int lastOrdinal = -1;
+    private int docFreq;
+
+    /**
+     * 遍历回调
+     */
+    @FunctionalInterface
+    public interface PostingVisitor {
+        void accept(int ordinal, int tf);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param ordinal 序号，须大于上一次追加的序号
+     * @param tf      词频
+     */
+    public void append(int ordinal, int tf) {
+        if (ordinal <= lastOrdinal) {
+            throw new IllegalArgumentException("序号须严格递增: " + ordinal + " <= " + lastOrdinal);
+        }
+        writeVarInt(ordinal - lastOrdinal);
+        writeVarInt(tf);
+        lastOrdinal = ordinal;
+        docFreq++;
+    }
+
+    /**
+     * 按序号升序遍历全部记录
+     */
+    public void forEach(PostingVisitor visitor) {
+        byte[] bytes = data;
+        int pos = 0;
+        int ordinal = -1;
+        while (pos < size) {
+            int delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                delta |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int tf = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                tf |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            ordinal += delta;
+            visitor.accept(ordinal, tf);
+        }
+    }
+
+    /**
+     * 按新序号重写（压缩时使用），跳过 remap 为 -1 的条目
+     *
+     * @param remap 旧序号 -> 新序号，须随旧序号单调递增
+     * @return 重写后的倒排表（容量收紧到实际大小）
+     */
+    public PostingsList rewrite(int[] remap) {
+        PostingsList rewritten = new PostingsList();
+        forEach((ordinal, tf) -> {
+            if (remap[ordinal] >= 0) {
+                rewritten.append(remap[ordinal], tf);
+            }
+        });
+        rewritten.data = Arrays.copyOf(rewritten.data, rewritten.size);
+        return rewritten;
+    }
+
+    /**
+     * 记录数（含调用方已打墓碑、尚未压缩的条目）
+     */
+    public int docFreq() {
+        return docFreq;
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    public int sizeInBytes() {
+        return size;
+    }
+
+    private void writeVarInt(int value) {
+        if (size + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+}
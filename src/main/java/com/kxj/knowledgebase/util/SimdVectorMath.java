@@ -0,0 +1,36 @@
+package com.kxj.knowledgebase.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Vector API 的 SIMD 实现
+ * <p>
+ * 只能在 jdk.incubator.vector 模块已加载时使用，由 {@link VectorMath} 检测后调用。
+ */
+final class SimdVectorMath {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    static float dot(float[] a, float[] b) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        // 尾部不足一个向量宽度的元素
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private SimdVectorMath() {
+        throw new UnsupportedOperationException("工具类不允许实例化");
+    }
+}
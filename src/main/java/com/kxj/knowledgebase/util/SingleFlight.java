@@ -0,0 +1,94 @@
+package com.kxj.knowledgebase.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * <p>
+ * 同一 key 同时只有一个调用方真正执行加载，其余并发调用方等待并共享同一结果；
+ * 加载结束（成功或失败）后立即移除，之后的调用会重新执行。结果本身不做缓存。
+ *
+ * @param <K> key 类型
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载，若同 key 的加载正在进行则等待其结果
+     *
+     * @param key    合并 key
+     * @param loader 加载函数（只在当前调用方是首个调用方时执行）
+     * @return 加载结果
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V value = loader.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * 异步版本：同 key 的加载正在进行时直接返回其 future，否则启动加载
+     *
+     * @param key    合并 key
+     * @param loader 返回异步结果的加载函数（只在当前调用方是首个调用方时执行）
+     * @return 加载结果的 future
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            loader.get().whenComplete((value, error) -> {
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(value);
+                }
+                inFlight.remove(key, created);
+            });
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            inFlight.remove(key, created);
+        }
+        return created;
+    }
+
+    /**
+     * 当前正在进行的加载数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package com.kxj.knowledgebase.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
 public class StringUtils {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     public static String floatArrayToString(float[] array) {
         if (array == null || array.length == 0) {
             return "[]";
@@ -25,6 +34,29 @@ public class StringUtils {
         return text.length() / 3;
     }
 
+    /**
+     * 文本内容的 SHA-256（十六进制小写），与 PostgreSQL encode(sha256(...), 'hex') 结果一致
+     */
+    public static String sha256Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 向量化前的文本规范化：NFKC（全角/半角统一）、连续空白合并为一个空格、去除首尾空白
+     * 仅排版不同的文本得到同一个内容哈希，可复用同一条向量
+     */
+    public static String normalizeForEmbedding(String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC)).replaceAll(" ").trim();
+    }
+
     private StringUtils() {
         throw new UnsupportedOperationException("工具类不允许实例化");
     }
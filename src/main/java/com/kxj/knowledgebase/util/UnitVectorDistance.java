@@ -0,0 +1,24 @@
+package com.kxj.knowledgebase.util;
+
+import com.github.jelmerk.knn.DistanceFunction;
+
+import java.io.Serial;
+
+/**
+ * HNSW 距离函数：单位向量的余弦距离（1 - 点积）
+ * <p>
+ * 要求入索引的向量和查询向量都已通过 {@link VectorMath#normalize} 归一化，
+ * 省去 hnswlib 自带余弦距离每次比较时的两次求模。
+ */
+public class UnitVectorDistance implements DistanceFunction<float[], Float> {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final UnitVectorDistance INSTANCE = new UnitVectorDistance();
+
+    @Override
+    public Float distance(float[] u, float[] v) {
+        return 1f - VectorMath.dot(u, v);
+    }
+}
@@ -0,0 +1,150 @@
+package com.kxj.knowledgebase.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 向量二进制编解码
+ * <p>
+ * 格式：[0x00 魔数][编码类型][维度 uint16 LE][INT8 时附带 float32 缩放系数][数据]
+ * <ul>
+ *     <li>FLOAT32：原始 little-endian float32，768 维 3KB</li>
+ *     <li>FLOAT16：半精度，768 维 1.5KB</li>
+ *     <li>INT8：按最大绝对值对称量化，768 维约 0.8KB</li>
+ * </ul>
+ * 旧版逗号分隔的十进制文本首字节不可能是 0x00，因此 {@link #decode(byte[])} 可以同时读取新旧两种格式。
+ */
+public class VectorCodec {
+
+    public enum Encoding {
+        FLOAT32((byte) 1),
+        FLOAT16((byte) 2),
+        INT8((byte) 3);
+
+        private final byte id;
+
+        Encoding(byte id) {
+            this.id = id;
+        }
+
+        static Encoding of(byte id) {
+            for (Encoding encoding : values()) {
+                if (encoding.id == id) {
+                    return encoding;
+                }
+            }
+            throw new IllegalArgumentException("未知的向量编码类型: " + id);
+        }
+    }
+
+    private static final byte MAGIC = 0x00;
+    private static final int HEADER_SIZE = 4;
+
+    public static byte[] encode(float[] vector, Encoding encoding) {
+        int dim = vector.length;
+        if (dim > 0xFFFF) {
+            throw new IllegalArgumentException("向量维度过大: " + dim);
+        }
+
+        ByteBuffer buffer = switch (encoding) {
+            case FLOAT32 -> header(encoding, dim, dim * Float.BYTES);
+            case FLOAT16 -> header(encoding, dim, dim * Short.BYTES);
+            case INT8 -> header(encoding, dim, Float.BYTES + dim);
+        };
+
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (float v : vector) {
+                    buffer.putFloat(v);
+                }
+            }
+            case FLOAT16 -> {
+                for (float v : vector) {
+                    buffer.putShort(Float.floatToFloat16(v));
+                }
+            }
+            case INT8 -> {
+                float maxAbs = 0f;
+                for (float v : vector) {
+                    maxAbs = Math.max(maxAbs, Math.abs(v));
+                }
+                float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+                buffer.putFloat(scale);
+                for (float v : vector) {
+                    buffer.put((byte) Math.round(v / scale));
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 解码二进制向量；若不是二进制格式则按旧版逗号分隔文本解析
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new float[0];
+        }
+        if (!isBinary(bytes)) {
+            return decodeText(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.get();
+        Encoding encoding = Encoding.of(buffer.get());
+        int dim = Short.toUnsignedInt(buffer.getShort());
+        float[] vector = new float[dim];
+
+        switch (encoding) {
+            case FLOAT32 -> buffer.asFloatBuffer().get(vector);
+            case FLOAT16 -> {
+                for (int i = 0; i < dim; i++) {
+                    vector[i] = Float.float16ToFloat(buffer.getShort());
+                }
+            }
+            case INT8 -> {
+                float scale = buffer.getFloat();
+                for (int i = 0; i < dim; i++) {
+                    vector[i] = buffer.get() * scale;
+                }
+            }
+        }
+        return vector;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 解析旧版逗号分隔的十进制文本（兼容 "[a,b,c]" 形式）
+     */
+    public static float[] decodeText(String str) {
+        String body = str.trim();
+        if (body.startsWith("[") && body.endsWith("]")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Float.parseFloat(parts[i].trim());
+        }
+        return result;
+    }
+
+    private static ByteBuffer header(Encoding encoding, int dim, int payloadSize) {
+        return ByteBuffer.allocate(HEADER_SIZE + payloadSize)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .put(MAGIC)
+                .put(encoding.id)
+                .putShort((short) dim);
+    }
+
+    private VectorCodec() {
+        throw new UnsupportedOperationException("工具类不允许实例化");
+    }
+}
@@ -0,0 +1,86 @@
+package com.kxj.knowledgebase.util;
+
+/**
+ * 向量相似度计算
+ * <p>
+ * 向量在写入缓存/索引时先归一化为单位长度，查询热路径上余弦相似度即为一次点积。
+ * 运行时加载了 jdk.incubator.vector 模块（--add-modules jdk.incubator.vector）时使用 SIMD 实现，
+ * 否则回退到标量循环；可通过 -Dvector.simd.disabled=true 强制使用标量实现。
+ */
+public class VectorMath {
+
+    private static final boolean SIMD_ENABLED = detectSimd();
+
+    /**
+     * 点积；两个向量均为单位向量时即为余弦相似度
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        return SIMD_ENABLED ? SimdVectorMath.dot(a, b) : scalarDot(a, b);
+    }
+
+    /**
+     * 返回归一化后的副本（零向量原样返回）
+     */
+    public static float[] normalize(float[] vector) {
+        float sumOfSquares = SIMD_ENABLED ? SimdVectorMath.dot(vector, vector) : scalarDot(vector, vector);
+        if (sumOfSquares == 0) {
+            return vector;
+        }
+        float inv = (float) (1.0 / Math.sqrt(sumOfSquares));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
+    }
+
+    /**
+     * 任意向量的余弦相似度（未归一化时使用，热路径应先归一化再调用 {@link #dot}）
+     */
+    public static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double normA = dot(a, a);
+        double normB = dot(b, b);
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return dot(a, b) / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    public static boolean isSimdEnabled() {
+        return SIMD_ENABLED;
+    }
+
+    static float scalarDot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static boolean detectSimd() {
+        if (Boolean.getBoolean("vector.simd.disabled")) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            // 触发 SIMD 实现类加载，失败时回退到标量实现
+            SimdVectorMath.dot(new float[1], new float[1]);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private VectorMath() {
+        throw new UnsupportedOperationException("工具类不允许实例化");
+    }
+}
@@ -0,0 +1,22 @@
+-- Flyway迁移脚本V10：文档版本与 chunk 内容哈希
+-- 同名文档重新上传时视为新版本，按 chunk 内容哈希增量更新：
+-- 未变化的 chunk 保留主键与向量，只对新增/变化的 chunk 向量化并写入，已移除的 chunk 一次性删除
+
+ALTER TABLE document
+    ADD COLUMN IF NOT EXISTS version INTEGER NOT NULL DEFAULT 1;
+
+ALTER TABLE document_chunk
+    ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+-- 回填已有 chunk 的内容哈希（与应用侧 SHA-256 十六进制编码一致）
+UPDATE document_chunk
+SET content_hash = encode(sha256(convert_to(content, 'UTF8')), 'hex')
+WHERE content_hash IS NULL;
+
+-- 创建索引
+-- 上传时按文件名查找已有版本
+CREATE INDEX IF NOT EXISTS idx_document_file_name ON document(file_name);
+
+-- 添加注释
+COMMENT ON COLUMN document.version IS '文档版本号，同名文档每次重新入库 +1';
+COMMENT ON COLUMN document_chunk.content_hash IS 'chunk 内容的 SHA-256（十六进制），重新入库时用于识别未变化的 chunk';
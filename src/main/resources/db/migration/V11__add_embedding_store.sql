@@ -0,0 +1,16 @@
+-- Flyway迁移脚本V11：内容寻址的向量存储
+-- 文档入库时按 (规范化文本哈希, 模型名) 持久化向量，不设过期时间；
+-- 跨文档重复出现的文本（页眉、免责声明、法律条款等）全库只调用一次模型
+
+CREATE TABLE IF NOT EXISTS embedding_store (
+    content_hash VARCHAR(64) NOT NULL,
+    model VARCHAR(100) NOT NULL,
+    embedding vector(768) NOT NULL,
+    create_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (content_hash, model)
+);
+
+-- 添加注释
+COMMENT ON TABLE embedding_store IS '内容寻址的向量存储，入库时按文本哈希复用已计算的向量';
+COMMENT ON COLUMN embedding_store.content_hash IS '规范化文本（NFKC、合并空白）的 SHA-256（十六进制）';
+COMMENT ON COLUMN embedding_store.model IS '向量化模型名，切换模型后旧向量不会被复用';
@@ -0,0 +1,50 @@
+-- Flyway迁移脚本V12：全文搜索返回 parent_chunk_id
+-- 父文档检索按 parent_chunk_id 分组，原函数不返回该列，全文命中的子块在组装父块时被丢弃
+-- 返回列变化，需先删除旧函数再重建
+
+DROP FUNCTION IF EXISTS fulltext_search_chunks(text, integer);
+
+CREATE OR REPLACE FUNCTION fulltext_search_chunks(
+    search_query text,
+    limit_count integer DEFAULT 10
+)
+RETURNS TABLE (
+    chunk_id bigint,
+    parent_chunk_id bigint,
+    document_id bigint,
+    chunk_index integer,
+    content text,
+    rank real,
+    create_time timestamp
+) AS $$
+DECLARE
+    cleaned_query text;
+BEGIN
+    -- 过滤停用词
+    cleaned_query := remove_stopwords(search_query);
+
+    -- 如果过滤后为空，只移除标点
+    IF cleaned_query IS NULL OR cleaned_query = '' THEN
+        cleaned_query := regexp_replace(search_query, '[？。，！；：（）【】《》"''"''"…—～｜、]', ' ', 'g');
+        cleaned_query := regexp_replace(cleaned_query, '\s+', ' ', 'g');
+        cleaned_query := trim(cleaned_query);
+    END IF;
+
+    RETURN QUERY
+    SELECT
+        dc.id as chunk_id,
+        dc.parent_chunk_id,
+        dc.document_id,
+        dc.chunk_index,
+        dc.content,
+        ts_rank(dc.content_tsv, plainto_tsquery('simple', cleaned_query)) as rank,
+        dc.create_time
+    FROM document_chunk dc
+    WHERE dc.content_tsv @@ plainto_tsquery('simple', cleaned_query)
+    ORDER BY rank DESC
+    LIMIT limit_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 添加注释
+COMMENT ON FUNCTION fulltext_search_chunks IS '全文搜索函数（带停用词过滤，返回父块ID）';
@@ -0,0 +1,87 @@
+-- Flyway迁移脚本V13：子块部分 HNSW 索引，父块不再存储向量
+-- 父块只提供上下文、不参与向量检索，此前存储全零向量并进入 V2 创建的五个 ANN 索引；
+-- 每次插入都要更新五个索引结构，且全零向量干扰近邻搜索。
+-- 改为父块 embedding 为 NULL，只保留一个 chunk_level = 1 的部分 HNSW 索引
+
+-- 父块向量置空（只处理全零向量，早期未分层的 chunk 保留其真实向量）
+ALTER TABLE document_chunk ALTER COLUMN embedding DROP NOT NULL;
+
+UPDATE document_chunk
+SET embedding = NULL
+WHERE chunk_level = 0
+  AND embedding = CAST(array_fill(0::real, ARRAY[768]) AS vector);
+
+-- 删除 V2 创建的索引（检索只使用余弦距离，且只检索子块）
+DROP INDEX IF EXISTS idx_embedding_ivfflat;
+DROP INDEX IF EXISTS idx_embedding_hnsw;
+DROP INDEX IF EXISTS idx_embedding_cosine;
+DROP INDEX IF EXISTS idx_embedding_l2;
+DROP INDEX IF EXISTS idx_embedding_ip;
+
+-- 子块部分 HNSW 索引：查询条件须包含 chunk_level = 1 才能命中
+-- 参数与进程内子块索引（ChildChunkVectorIndex）一致
+CREATE INDEX IF NOT EXISTS idx_child_embedding_hnsw ON document_chunk
+USING hnsw (embedding vector_cosine_ops)
+WITH (m = 16, ef_construction = 200)
+WHERE chunk_level = 1;
+
+-- 向量相似度搜索函数只检索子块，与部分索引条件一致
+CREATE OR REPLACE FUNCTION search_similar_chunks(
+    query_embedding vector,
+    limit_count integer DEFAULT 10
+)
+RETURNS TABLE (
+    chunk_id bigint,
+    document_id bigint,
+    chunk_index integer,
+    content text,
+    similarity double precision,
+    create_time timestamp
+) AS $$
+BEGIN
+    RETURN QUERY
+    SELECT
+        dc.id as chunk_id,
+        dc.document_id,
+        dc.chunk_index,
+        dc.content,
+        1 - (dc.embedding <=> query_embedding) as similarity,
+        dc.create_time
+    FROM document_chunk dc
+    WHERE dc.chunk_level = 1
+    ORDER BY dc.embedding <=> query_embedding
+    LIMIT limit_count;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION search_similar_chunks_in_document(
+    doc_id bigint,
+    query_embedding vector,
+    limit_count integer DEFAULT 10
+)
+RETURNS TABLE (
+    chunk_id bigint,
+    chunk_index integer,
+    content text,
+    similarity double precision,
+    create_time timestamp
+) AS $$
+BEGIN
+    RETURN QUERY
+    SELECT
+        dc.id as chunk_id,
+        dc.chunk_index,
+        dc.content,
+        1 - (dc.embedding <=> query_embedding) as similarity,
+        dc.create_time
+    FROM document_chunk dc
+    WHERE dc.document_id = doc_id
+      AND dc.chunk_level = 1
+    ORDER BY dc.embedding <=> query_embedding
+    LIMIT limit_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 添加注释
+COMMENT ON COLUMN document_chunk.embedding IS '子块向量；父块不参与向量检索，为 NULL';
+COMMENT ON INDEX idx_child_embedding_hnsw IS '子块向量部分 HNSW 索引（余弦距离，chunk_level = 1）';
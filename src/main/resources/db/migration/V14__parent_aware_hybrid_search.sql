@@ -0,0 +1,116 @@
+-- Flyway迁移脚本V14：服务端父文档混合检索
+-- 原 hybrid_search_chunks 通过 LEFT JOIN 对每一行计算向量距离（全表扫描），Java 侧从未使用；
+-- 新函数在一条语句内完成：子块 kNN（命中 V13 部分 HNSW 索引）、全文检索（GIN 索引）、
+-- 加权融合、按父块聚合并关联父块内容，一次对话检索只需一次数据库往返
+
+DROP FUNCTION IF EXISTS hybrid_search_chunks(text, vector, integer, numeric, numeric);
+
+CREATE OR REPLACE FUNCTION parent_aware_hybrid_search(
+    search_query text,
+    query_embedding vector,
+    child_limit integer DEFAULT 10,
+    parent_limit integer DEFAULT 3,
+    text_weight double precision DEFAULT 0.4,
+    vector_weight double precision DEFAULT 0.6
+)
+RETURNS TABLE (
+    parent_chunk_id bigint,
+    document_id bigint,
+    parent_content text,
+    section_title varchar,
+    page_range varchar,
+    headings_path varchar,
+    parent_score double precision,
+    child_chunk_id bigint,
+    child_chunk_index integer,
+    child_content text,
+    child_score double precision,
+    match_type text
+) AS $$
+#variable_conflict use_column
+DECLARE
+    cleaned_query text;
+BEGIN
+    -- 过滤停用词
+    cleaned_query := remove_stopwords(search_query);
+
+    -- 如果过滤后为空，只移除标点
+    IF cleaned_query IS NULL OR cleaned_query = '' THEN
+        cleaned_query := regexp_replace(search_query, '[？。，！；：（）【】《》"''"''"…—～｜、]', ' ', 'g');
+        cleaned_query := regexp_replace(cleaned_query, '\s+', ' ', 'g');
+        cleaned_query := trim(cleaned_query);
+    END IF;
+
+    RETURN QUERY
+    WITH vector_hits AS MATERIALIZED (
+        -- 子块 kNN：ORDER BY 距离 + LIMIT + chunk_level = 1，由部分 HNSW 索引驱动
+        SELECT dc.id, 1 - (dc.embedding <=> query_embedding) AS similarity
+        FROM document_chunk dc
+        WHERE dc.chunk_level = 1
+        ORDER BY dc.embedding <=> query_embedding
+        LIMIT child_limit
+    ),
+    text_hits AS MATERIALIZED (
+        -- 子块全文检索：GIN 索引
+        SELECT dc.id, ts_rank(dc.content_tsv, q.query)::double precision AS text_rank
+        FROM document_chunk dc, plainto_tsquery('simple', cleaned_query) AS q(query)
+        WHERE dc.content_tsv @@ q.query
+          AND dc.chunk_level = 1
+        ORDER BY text_rank DESC
+        LIMIT child_limit
+    ),
+    fused AS (
+        -- 融合规则与 ParentAwareHybridRetriever.mergeAndRank 一致
+        SELECT COALESCE(v.id, t.id) AS id,
+               CASE
+                   WHEN v.id IS NOT NULL AND t.id IS NOT NULL
+                       THEN v.similarity * vector_weight + t.text_rank * text_weight
+                   WHEN v.id IS NOT NULL THEN v.similarity
+                   ELSE t.text_rank * text_weight
+               END AS score,
+               CASE
+                   WHEN v.id IS NOT NULL AND t.id IS NOT NULL THEN 'hybrid'
+                   WHEN v.id IS NOT NULL THEN 'vector'
+                   ELSE 'fulltext'
+               END AS match_type
+        FROM vector_hits v
+        FULL OUTER JOIN text_hits t ON v.id = t.id
+        ORDER BY score DESC
+        LIMIT child_limit
+    ),
+    children AS (
+        SELECT c.id, c.parent_chunk_id, c.chunk_index, c.content, f.score, f.match_type
+        FROM fused f
+        JOIN document_chunk c ON c.id = f.id
+        WHERE c.parent_chunk_id IS NOT NULL
+    ),
+    top_parents AS (
+        -- 父块分数：命中子块的平均分
+        SELECT ch.parent_chunk_id, AVG(ch.score) AS score
+        FROM children ch
+        GROUP BY ch.parent_chunk_id
+        ORDER BY score DESC
+        LIMIT parent_limit
+    )
+    SELECT
+        p.id AS parent_chunk_id,
+        p.document_id,
+        p.content AS parent_content,
+        p.section_title,
+        p.page_range,
+        p.headings_path,
+        tp.score AS parent_score,
+        ch.id AS child_chunk_id,
+        ch.chunk_index AS child_chunk_index,
+        ch.content AS child_content,
+        ch.score AS child_score,
+        ch.match_type
+    FROM top_parents tp
+    JOIN document_chunk p ON p.id = tp.parent_chunk_id
+    JOIN children ch ON ch.parent_chunk_id = tp.parent_chunk_id
+    ORDER BY tp.score DESC, ch.score DESC;
+END;
+$$ LANGUAGE plpgsql STABLE;
+
+-- 添加注释
+COMMENT ON FUNCTION parent_aware_hybrid_search IS '父文档混合检索：子块 kNN + 全文检索 + 融合 + 父块关联（单次往返）';
@@ -0,0 +1,12 @@
+-- Flyway迁移脚本V15：停用词过滤移到应用侧
+-- 停用词、语气词与同义词已编译进应用内的 Aho-Corasick 自动机（SynonymNormalizer），
+-- 全文检索查询在调用 fulltext_search_chunks / parent_aware_hybrid_search 前已完成过滤，
+-- 原函数每次查询执行约 10 次正则替换，这里改为只合并空白，调用方无需修改
+
+CREATE OR REPLACE FUNCTION remove_stopwords(query_text text)
+RETURNS text AS $$
+    SELECT trim(regexp_replace(query_text, '\s+', ' ', 'g'));
+$$ LANGUAGE sql IMMUTABLE;
+
+-- 添加注释
+COMMENT ON FUNCTION remove_stopwords IS '合并空白（停用词过滤已移到应用侧 SynonymNormalizer）';
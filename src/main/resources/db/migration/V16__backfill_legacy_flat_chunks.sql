@@ -0,0 +1,21 @@
+-- Flyway迁移脚本V16：早期未分层的 chunk 回填为自引用子块
+-- V8 之前入库的 chunk 没有父子结构，chunk_level 默认为 0、parent_chunk_id 为 NULL，但带有真实向量。
+-- V13 起向量检索只查 chunk_level = 1（部分 HNSW 索引），父块组装也要求 parent_chunk_id 非空，
+-- 这些 chunk 从向量检索和父块组装中消失。
+-- 将其改为子块并以自身为父块：检索命中后按自身内容组装上下文，与重新入库前的行为一致。
+
+-- 只处理没有子块、带真实向量的顶层 chunk（V13 已将分层父块的全零向量置空）
+UPDATE document_chunk c
+SET chunk_level = 1,
+    parent_chunk_id = c.id
+WHERE COALESCE(c.chunk_level, 0) = 0
+  AND c.parent_chunk_id IS NULL
+  AND c.embedding IS NOT NULL
+  AND NOT EXISTS (
+      SELECT 1
+      FROM document_chunk ch
+      WHERE ch.parent_chunk_id = c.id
+  );
+
+-- 添加注释
+COMMENT ON COLUMN document_chunk.parent_chunk_id IS '父块ID（子块才有，父块为null；早期未分层的 chunk 指向自身）';
@@ -0,0 +1,51 @@
+-- Flyway迁移脚本V17：全文搜索只返回子块
+-- 父块与其子块内容相同，V12 的函数未按层级过滤，父块会占用 LIMIT 名额，
+-- 组装父块时又因没有父块ID被丢弃，导致全文一路返回的子块少于 topK。
+-- 与 V14 parent_aware_hybrid_search 一致，只检索 chunk_level = 1 的子块（早期未分层的 chunk 已由 V16 回填为子块）。
+-- V12 已在既有环境执行，不能修改其内容，这里以相同签名重建函数
+
+CREATE OR REPLACE FUNCTION fulltext_search_chunks(
+    search_query text,
+    limit_count integer DEFAULT 10
+)
+RETURNS TABLE (
+    chunk_id bigint,
+    parent_chunk_id bigint,
+    document_id bigint,
+    chunk_index integer,
+    content text,
+    rank real,
+    create_time timestamp
+) AS $$
+DECLARE
+    cleaned_query text;
+BEGIN
+    -- 合并空白（停用词已在应用侧过滤，见 V15）
+    cleaned_query := remove_stopwords(search_query);
+
+    -- 如果过滤后为空，只移除标点
+    IF cleaned_query IS NULL OR cleaned_query = '' THEN
+        cleaned_query := regexp_replace(search_query, '[？。，！；：（）【】《》"''"''"…—～｜、]', ' ', 'g');
+        cleaned_query := regexp_replace(cleaned_query, '\s+', ' ', 'g');
+        cleaned_query := trim(cleaned_query);
+    END IF;
+
+    RETURN QUERY
+    SELECT
+        dc.id as chunk_id,
+        dc.parent_chunk_id,
+        dc.document_id,
+        dc.chunk_index,
+        dc.content,
+        ts_rank(dc.content_tsv, plainto_tsquery('simple', cleaned_query)) as rank,
+        dc.create_time
+    FROM document_chunk dc
+    WHERE dc.content_tsv @@ plainto_tsquery('simple', cleaned_query)
+      AND dc.chunk_level = 1
+    ORDER BY rank DESC
+    LIMIT limit_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 添加注释
+COMMENT ON FUNCTION fulltext_search_chunks IS '全文搜索函数（只检索子块，返回父块ID）';
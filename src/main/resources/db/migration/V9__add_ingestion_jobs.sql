@@ -0,0 +1,55 @@
+-- Flyway迁移脚本V9：可恢复的文档入库任务
+-- 入库进度持久化到数据库（替代 Redis 计数器），按文档、按 chunk 批次记录检查点，
+-- 进程重启后从最后一个已提交的批次继续
+
+-- 入库任务（一次批量上传）
+CREATE TABLE IF NOT EXISTS ingestion_job (
+    id VARCHAR(36) PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    total_documents INTEGER NOT NULL,
+    create_time TIMESTAMP NOT NULL,
+    update_time TIMESTAMP NOT NULL
+);
+
+-- 入库任务中的单个文档及其检查点
+CREATE TABLE IF NOT EXISTS ingestion_job_item (
+    id BIGSERIAL PRIMARY KEY,
+    job_id VARCHAR(36) NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    file_hash VARCHAR(1000) NOT NULL,
+    file_size BIGINT NOT NULL,
+    content_type VARCHAR(255),
+    spool_path VARCHAR(1000),
+    object_name VARCHAR(500),
+    document_id BIGINT,
+    status VARCHAR(20) NOT NULL,
+    chunk_ids BIGINT[],
+    total_batches INTEGER NOT NULL DEFAULT 0,
+    persisted_batches INTEGER NOT NULL DEFAULT 0,
+    error_message VARCHAR(1000),
+    update_time TIMESTAMP NOT NULL
+);
+
+-- 创建索引
+CREATE INDEX IF NOT EXISTS idx_ingestion_job_item_job_id ON ingestion_job_item(job_id);
+-- 启动恢复时只扫描未结束的条目
+CREATE INDEX IF NOT EXISTS idx_ingestion_job_item_unfinished ON ingestion_job_item(status)
+    WHERE status NOT IN ('COMPLETED', 'FAILED');
+
+-- 添加外键约束
+ALTER TABLE ingestion_job_item
+ADD CONSTRAINT fk_ingestion_job_item_job
+FOREIGN KEY (job_id) REFERENCES ingestion_job(id)
+ON DELETE CASCADE;
+
+ALTER TABLE ingestion_job_item
+ADD CONSTRAINT fk_ingestion_job_item_document
+FOREIGN KEY (document_id) REFERENCES document(id)
+ON DELETE SET NULL;
+
+-- 添加注释
+COMMENT ON TABLE ingestion_job IS '文档入库任务表，一次批量上传对应一个任务';
+COMMENT ON TABLE ingestion_job_item IS '入库任务条目表，记录单个文档的处理阶段与检查点';
+COMMENT ON COLUMN ingestion_job_item.status IS 'PENDING=已暂存, UPLOADED=已上传MinIO并创建文档, CHUNKED=已切分并分配ID, COMPLETED=完成, FAILED=失败';
+COMMENT ON COLUMN ingestion_job_item.chunk_ids IS '预分配的 chunk 主键（按切分顺序），恢复时沿用以保持父子/相邻关联一致';
+COMMENT ON COLUMN ingestion_job_item.persisted_batches IS '已提交的 chunk 批次数，恢复时跳过';
@@ -0,0 +1,112 @@
+package com.kxj.knowledgebase.service.storage;
+
+import com.kxj.knowledgebase.config.RetrievalProperties;
+import com.kxj.knowledgebase.entity.DocumentChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChildChunkLexicalIndexTest {
+
+    private static final int ALL = 10_000;
+
+    @Test
+    void higherTermFrequencyRanksHigher() {
+        ChildChunkLexicalIndex index = newIndex();
+        index.onChunksSaved(List.of(
+                child(1L, 1L, "苹果 苹果 苹果"),
+                child(2L, 1L, "苹果 香蕉"),
+                child(3L, 1L, "香蕉 葡萄")));
+
+        List<ChildChunkLexicalIndex.ScoredChunk> results = index.search("苹果", ALL);
+
+        assertEquals(List.of(1L, 2L), chunkIds(results));
+        assertTrue(results.get(0).score() > results.get(1).score());
+    }
+
+    @Test
+    void tombstonedChunksAreSkippedBeforeCompaction() {
+        ChildChunkLexicalIndex index = newIndex();
+        index.onChunksSaved(List.of(
+                child(1L, 1L, "知识库检索"),
+                child(2L, 2L, "知识库检索")));
+
+        index.onDocumentDeleted(1L);
+
+        assertEquals(1, index.tombstoneCount());
+        assertEquals(List.of(2L), chunkIds(index.search("知识库", ALL)));
+    }
+
+    @Test
+    void compactionMatchesFreshIndexOfLiveChunks() {
+        ChildChunkLexicalIndex index = newIndex();
+        List<DocumentChunk> all = new ArrayList<>();
+        List<DocumentChunk> live = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) {
+            if (id % 6 == 0) {
+                DocumentChunk chunk = child(id, 2L, "知识库检索 第" + id + "节" + " 补充".repeat((int) (id % 5)));
+                live.add(chunk);
+                all.add(chunk);
+            } else {
+                all.add(child(id, 1L, "过期内容 知识库 " + id));
+            }
+        }
+        index.onChunksSaved(all);
+
+        // 1000 个墓碑、占序号总数 5/6，超过压缩阈值
+        index.onDocumentDeleted(1L);
+        assertEquals(0, index.tombstoneCount());
+
+        ChildChunkLexicalIndex fresh = newIndex();
+        fresh.onChunksSaved(live);
+        for (String query : List.of("知识库检索", "补充", "第600节", "过期内容")) {
+            assertEquals(scores(fresh.search(query, ALL)), scores(index.search(query, ALL)), query);
+        }
+        assertTrue(index.search("过期内容", ALL).isEmpty());
+
+        // 压缩后继续追加的条目使用新的连续序号
+        index.onChunksSaved(List.of(child(5000L, 3L, "压缩之后 知识库检索")));
+        assertEquals(List.of(5000L), chunkIds(index.search("压缩之后", ALL)));
+        assertEquals(live.size() + 1, index.search("知识库检索", ALL).size());
+    }
+
+    @Test
+    void reAddingAChunkReplacesItsPreviousContent() {
+        ChildChunkLexicalIndex index = newIndex();
+        index.onChunksSaved(List.of(child(1L, 1L, "苹果")));
+        index.onChunksSaved(List.of(child(1L, 1L, "香蕉")));
+
+        assertTrue(index.search("苹果", ALL).isEmpty());
+        assertEquals(List.of(1L), chunkIds(index.search("香蕉", ALL)));
+    }
+
+    private static ChildChunkLexicalIndex newIndex() {
+        ChildChunkLexicalIndex index = new ChildChunkLexicalIndex(null, new RetrievalProperties(), null);
+        index.initInMemory();
+        return index;
+    }
+
+    private static DocumentChunk child(Long id, Long documentId, String content) {
+        return DocumentChunk.builder()
+                .id(id)
+                .documentId(documentId)
+                .chunkLevel(1)
+                .content(content)
+                .build();
+    }
+
+    private static List<Long> chunkIds(List<ChildChunkLexicalIndex.ScoredChunk> results) {
+        return results.stream().map(ChildChunkLexicalIndex.ScoredChunk::chunkId).toList();
+    }
+
+    private static Map<Long, Double> scores(List<ChildChunkLexicalIndex.ScoredChunk> results) {
+        return results.stream().collect(Collectors.toMap(
+                ChildChunkLexicalIndex.ScoredChunk::chunkId, ChildChunkLexicalIndex.ScoredChunk::score));
+    }
+}
@@ -0,0 +1,84 @@
+package com.kxj.knowledgebase.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AhoCorasickTest {
+
+    @Test
+    void longestMatchWinsAtTheSameStart() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("ab", "abc", "bcd"));
+
+        // 起点 0 取最长的 abc；与之重叠的 bcd 不再替换
+        assertEquals("Yd", automaton.replace("abcd", new String[]{"X", "Y", "Z"}));
+    }
+
+    @Test
+    void leftmostMatchWinsOverLongerLaterMatch() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("bcde", "ab"));
+
+        assertEquals("Xcde", automaton.replace("abcde", new String[]{"Z", "X"}));
+    }
+
+    @Test
+    void disabledPatternsLetShorterOrLaterPatternsMatch() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("ab", "abc", "bcd"));
+
+        // abc 未启用：起点 0 退回到 ab
+        assertEquals("Xcd", automaton.replace("abcd", new String[]{"X", null, "Z"}));
+        // ab、abc 都未启用：起点 1 的 bcd 生效
+        assertEquals("aZ", automaton.replace("abcd", new String[]{null, null, "Z"}));
+        // 全部未启用：原样返回
+        assertEquals("abcd", automaton.replace("abcd", new String[]{null, null, null}));
+    }
+
+    @Test
+    void overlappingSuffixesAreFoundThroughOutputLinks() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("he", "she", "hers", "his"));
+
+        assertEquals("u<SHE>rs", automaton.replace("ushers", new String[]{"<HE>", "<SHE>", "<HERS>", "<HIS>"}));
+        // she 未启用：起点 2 的 he 与 hers 中取最长
+        assertEquals("us<HERS>", automaton.replace("ushers", new String[]{"<HE>", null, "<HERS>", "<HIS>"}));
+        // 只有 he 启用：经由 she 状态的输出链命中
+        assertEquals("us<HE>rs", automaton.replace("ushers", new String[]{"<HE>", null, null, null}));
+    }
+
+    @Test
+    void matchesRestartAfterFailureTransitions() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("aab", "ab"));
+
+        assertEquals("aX", automaton.replace("aaab", new String[]{"X", "Y"}));
+        assertEquals("aaY", automaton.replace("aaab", new String[]{null, "Y"}));
+    }
+
+    @Test
+    void emptyReplacementDeletesTheMatch() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("咋", "啊", "springboot"));
+
+        assertEquals("springboot怎么用",
+                automaton.replace("springboot咋用啊", new String[]{"怎么", "", "springboot"}));
+    }
+
+    @Test
+    void noMatchReturnsTheSameInstance() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("redis"));
+        String text = "怎么配置缓存";
+
+        assertSame(text, automaton.replace(text, new String[]{"X"}));
+        assertEquals("", automaton.replace("", new String[]{"X"}));
+    }
+
+    @Test
+    void emptyAndDuplicatePatternsAreIgnored() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("", "ab", "ab"));
+
+        // 重复模式保留第一个的下标，空串不参与匹配
+        assertEquals("-X-", automaton.replace("-ab-", new String[]{"E", "X", "Y"}));
+        assertEquals("-ab-", automaton.replace("-ab-", new String[]{"E", null, "Y"}));
+        assertEquals(List.of("", "ab", "ab"), automaton.patterns());
+    }
+}
@@ -0,0 +1,72 @@
+package com.kxj.knowledgebase.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CjkBigramTokenizerTest {
+
+    @Test
+    void hanRunYieldsUnigramsAndBigrams() {
+        assertEquals(List.of("知", "识", "知识", "库", "识库"), CjkBigramTokenizer.tokenize("知识库"));
+    }
+
+    @Test
+    void asciiWordsAreSplitOnNonAlphanumerics() {
+        assertEquals(List.of("spring", "boot", "4", "0"), CjkBigramTokenizer.tokenize("Spring-Boot 4.0"));
+    }
+
+    @Test
+    void mixedScriptBreaksBigramsAtWordBoundaries() {
+        // 字母片段打断中文：中文字符与字母片段之间、被隔开的“用”与“检”之间都不生成二元组
+        assertEquals(List.of("用", "rag", "检", "索", "检索"), CjkBigramTokenizer.tokenize("用RAG检索"));
+    }
+
+    @Test
+    void punctuationBreaksBigrams() {
+        // “你”与“好”之间隔着逗号，不生成“你好”
+        assertEquals(List.of("你", "好", "世", "好世", "界", "世界"), CjkBigramTokenizer.tokenize("你，好世界"));
+    }
+
+    @Test
+    void fullWidthAndCaseAreNormalized() {
+        assertEquals(CjkBigramTokenizer.tokenize("ABC 123"), CjkBigramTokenizer.tokenize("ＡＢＣ　１２３"));
+        assertEquals(List.of("abc", "123"), CjkBigramTokenizer.tokenize("ＡＢＣ　１２３"));
+    }
+
+    @Test
+    void kanaAndHangulAreTreatedAsCjk() {
+        assertEquals(List.of("カ", "タ", "カタ"), CjkBigramTokenizer.tokenize("カタ"));
+        assertEquals(List.of("한", "국", "한국"), CjkBigramTokenizer.tokenize("한국"));
+    }
+
+    @Test
+    void supplementaryHanCharactersAreSingleTokens() {
+        // U+20BB7（𠮷）占两个 char，应作为一个单字
+        String text = "𠮷野";
+        assertEquals(List.of("𠮷", "野", "𠮷野"), CjkBigramTokenizer.tokenize(text));
+    }
+
+    @Test
+    void overlongWordsAreDropped() {
+        String longWord = "a".repeat(65);
+        String maxWord = "b".repeat(64);
+
+        assertEquals(List.of(maxWord, "ok"), CjkBigramTokenizer.tokenize(longWord + " " + maxWord + " ok"));
+    }
+
+    @Test
+    void nullAndBlankYieldNoTokens() {
+        assertTrue(CjkBigramTokenizer.tokenize(null).isEmpty());
+        assertTrue(CjkBigramTokenizer.tokenize("").isEmpty());
+        assertTrue(CjkBigramTokenizer.tokenize("  ，。!").isEmpty());
+    }
+
+    @Test
+    void repeatedTermsAreKeptForTermFrequency() {
+        assertEquals(List.of("go", "go"), CjkBigramTokenizer.tokenize("go go"));
+    }
+}
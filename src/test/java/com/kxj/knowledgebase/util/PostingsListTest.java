@@ -0,0 +1,116 @@
+package com.kxj.knowledgebase.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingsListTest {
+
+    @Test
+    void varIntRoundTripAcrossByteBoundaries() {
+        // 差值与词频分别落在 1~5 字节 varint 的边界上
+        int[] ordinals = {0, 127, 255, 16_638, 16_639, 2_113_791, 270_549_119, Integer.MAX_VALUE - 1};
+        int[] tfs = {1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE};
+        PostingsList list = new PostingsList();
+        for (int i = 0; i < ordinals.length; i++) {
+            list.append(ordinals[i], tfs[i]);
+        }
+
+        assertEquals(ordinals.length, list.docFreq());
+        assertArrayEquals(flatten(ordinals, tfs), decode(list));
+    }
+
+    @Test
+    void shortPostingsUseTwoBytesPerEntry() {
+        PostingsList list = new PostingsList();
+        for (int ordinal = 0; ordinal < 100; ordinal++) {
+            list.append(ordinal * 3, 2);
+        }
+
+        assertEquals(200, list.sizeInBytes());
+    }
+
+    @Test
+    void appendRejectsNonIncreasingOrdinals() {
+        PostingsList list = new PostingsList();
+        list.append(5, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> list.append(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> list.append(4, 1));
+    }
+
+    @Test
+    void rewriteDropsTombstonesAndRenumbers() {
+        PostingsList list = new PostingsList();
+        list.append(0, 3);
+        list.append(2, 1);
+        list.append(300, 7);
+        list.append(301, 2);
+
+        // 0、300 被删除；其余按存活顺序重新编号
+        int[] remap = new int[302];
+        int next = 0;
+        for (int ordinal = 0; ordinal < remap.length; ordinal++) {
+            remap[ordinal] = ordinal == 0 || ordinal == 300 ? -1 : next++;
+        }
+        PostingsList rewritten = list.rewrite(remap);
+
+        assertEquals(2, rewritten.docFreq());
+        assertArrayEquals(new int[]{1, 1, 299, 2}, decode(rewritten));
+        // 差值 2、298 分别占 1、2 字节，词频各 1 字节
+        assertEquals(5, rewritten.sizeInBytes());
+        // 原倒排表不受影响
+        assertEquals(4, list.docFreq());
+    }
+
+    @Test
+    void rewrittenListAcceptsFurtherAppends() {
+        PostingsList list = new PostingsList();
+        list.append(0, 1);
+        list.append(1, 1);
+
+        PostingsList rewritten = list.rewrite(new int[]{-1, 0});
+        rewritten.append(1, 4);
+        rewritten.append(200, 5);
+
+        assertArrayEquals(new int[]{0, 1, 1, 4, 200, 5}, decode(rewritten));
+    }
+
+    @Test
+    void rewriteToEmpty() {
+        PostingsList list = new PostingsList();
+        list.append(0, 1);
+
+        PostingsList rewritten = list.rewrite(new int[]{-1});
+
+        assertEquals(0, rewritten.docFreq());
+        assertEquals(0, rewritten.sizeInBytes());
+        assertTrue(decode(rewritten).length == 0);
+        rewritten.append(0, 2);
+        assertArrayEquals(new int[]{0, 2}, decode(rewritten));
+    }
+
+    private static int[] decode(PostingsList list) {
+        List<Integer> values = new ArrayList<>();
+        list.forEach((ordinal, tf) -> {
+            values.add(ordinal);
+            values.add(tf);
+        });
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] flatten(int[] ordinals, int[] tfs) {
+        int[] values = new int[ordinals.length * 2];
+        for (int i = 0; i < ordinals.length; i++) {
+            values[2 * i] = ordinals[i];
+            values[2 * i + 1] = tfs[i];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,157 @@
+package com.kxj.knowledgebase.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        AtomicReference<String> leaderResult = new AtomicReference<>();
+        Thread leader = Thread.ofPlatform().start(() -> leaderResult.set(singleFlight.execute("k", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            awaitQuietly(release);
+            return "value";
+        })));
+        loading.await();
+
+        AtomicReference<String> followerResult = new AtomicReference<>();
+        Thread follower = Thread.ofPlatform().start(() -> followerResult.set(singleFlight.execute("k", () -> {
+            loads.incrementAndGet();
+            return "other";
+        })));
+        awaitBlocked(follower);
+
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertEquals(1, loads.get());
+        assertEquals("value", leaderResult.get());
+        assertEquals("value", followerResult.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void resultIsNotCachedAfterCompletion() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("load-1", singleFlight.execute("k", () -> "load-" + loads.incrementAndGet()));
+        assertEquals("load-2", singleFlight.execute("k", () -> "load-" + loads.incrementAndGet()));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void failureIsSharedWithWaitersAndThenForgotten() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        AtomicReference<Throwable> leaderError = new AtomicReference<>();
+        Thread leader = Thread.ofPlatform().start(() -> {
+            try {
+                singleFlight.execute("k", () -> {
+                    loading.countDown();
+                    awaitQuietly(release);
+                    throw failure;
+                });
+            } catch (Throwable e) {
+                leaderError.set(e);
+            }
+        });
+        loading.await();
+
+        AtomicReference<Throwable> followerError = new AtomicReference<>();
+        Thread follower = Thread.ofPlatform().start(() -> {
+            try {
+                singleFlight.execute("k", () -> "other");
+            } catch (Throwable e) {
+                followerError.set(e);
+            }
+        });
+        awaitBlocked(follower);
+
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertSame(failure, leaderError.get());
+        assertSame(failure, followerError.get());
+        assertEquals(0, singleFlight.inFlightCount());
+        assertEquals("retried", singleFlight.execute("k", () -> "retried"));
+    }
+
+    @Test
+    void asyncCallersShareTheInFlightFuture() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.executeAsync("k", () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("k", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+
+        assertSame(first, second);
+        assertEquals(1, singleFlight.inFlightCount());
+
+        source.complete("value");
+
+        assertEquals("value", second.join());
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void asyncLoaderThrowingSynchronouslyFailsTheFuture() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        CompletableFuture<String> future = singleFlight.executeAsync("k", () -> {
+            throw new IllegalArgumentException("bad");
+        });
+
+        assertTrue(future.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 等待线程进入阻塞（即已挂在进行中的 future 上）
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
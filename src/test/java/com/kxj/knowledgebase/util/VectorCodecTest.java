@@ -0,0 +1,103 @@
+package com.kxj.knowledgebase.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorCodecTest {
+
+    private static final int DIM = 768;
+
+    @Test
+    void float32RoundTripIsExact() {
+        float[] vector = randomVector(1);
+
+        byte[] encoded = VectorCodec.encode(vector, VectorCodec.Encoding.FLOAT32);
+
+        assertEquals(4 + DIM * 4, encoded.length);
+        assertArrayEquals(vector, VectorCodec.decode(encoded));
+    }
+
+    @Test
+    void float16RoundTripStaysWithinHalfPrecision() {
+        float[] vector = randomVector(2);
+
+        byte[] encoded = VectorCodec.encode(vector, VectorCodec.Encoding.FLOAT16);
+        float[] decoded = VectorCodec.decode(encoded);
+
+        assertEquals(4 + DIM * 2, encoded.length);
+        // 半精度尾数 10 位：相对误差不超过 2^-11
+        for (int i = 0; i < DIM; i++) {
+            assertEquals(vector[i], decoded[i], Math.abs(vector[i]) * 0x1p-11f + 1e-7f, "index " + i);
+        }
+    }
+
+    @Test
+    void int8RoundTripStaysWithinHalfQuantizationStep() {
+        float[] vector = randomVector(3);
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+
+        byte[] encoded = VectorCodec.encode(vector, VectorCodec.Encoding.INT8);
+        float[] decoded = VectorCodec.decode(encoded);
+
+        assertEquals(4 + 4 + DIM, encoded.length);
+        float halfStep = maxAbs / 127f / 2f;
+        for (int i = 0; i < DIM; i++) {
+            assertEquals(vector[i], decoded[i], halfStep + 1e-6f, "index " + i);
+        }
+    }
+
+    @Test
+    void int8KeepsLargestComponentExactAndZeroVectorDecodesToZero() {
+        float[] vector = {0.5f, -1.25f, 0.0f};
+
+        float[] decoded = VectorCodec.decode(VectorCodec.encode(vector, VectorCodec.Encoding.INT8));
+        float[] zero = VectorCodec.decode(VectorCodec.encode(new float[4], VectorCodec.Encoding.INT8));
+
+        assertEquals(-1.25f, decoded[1], 1e-6f);
+        assertEquals(0.0f, decoded[2], 0.0f);
+        assertArrayEquals(new float[4], zero);
+    }
+
+    @Test
+    void decodeFallsBackToLegacyTextFormat() {
+        byte[] legacy = "[0.25, -1.5,3]".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(VectorCodec.isBinary(legacy));
+        assertArrayEquals(new float[]{0.25f, -1.5f, 3f}, VectorCodec.decode(legacy));
+        assertArrayEquals(new float[0], VectorCodec.decodeText("[]"));
+    }
+
+    @Test
+    void binaryHeaderIsDetected() {
+        byte[] encoded = VectorCodec.encode(new float[]{1f}, VectorCodec.Encoding.FLOAT16);
+
+        assertTrue(VectorCodec.isBinary(encoded));
+        assertArrayEquals(new float[0], VectorCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void rejectsOversizedDimension() {
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.encode(new float[0x10000], VectorCodec.Encoding.FLOAT32));
+    }
+
+    private static float[] randomVector(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] vector = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            vector[i] = (float) (random.nextDouble() * 2 - 1);
+        }
+        return vector;
+    }
+}